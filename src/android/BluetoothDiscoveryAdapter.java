@@ -0,0 +1,139 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import android.app.Activity;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+
+/**
+ * Busca de dispositivos com o BluetoothAdapter do Android
+ */
+public class BluetoothDiscoveryAdapter implements DiscoveryAdapter {
+    private static final String LOG_TAG = "BluetoothPrinter";
+
+    private final Activity mActivity;
+    private BroadcastReceiver mReceiver;
+
+    public BluetoothDiscoveryAdapter(Activity activity) {
+        mActivity = activity;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return BluetoothAdapter.getDefaultAdapter() != null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        return adapter != null && adapter.isEnabled();
+    }
+
+    @Override
+    public void requestEnable() {
+        mActivity.startActivityForResult(new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE), 0);
+    }
+
+    @Override
+    public List<DiscoveredDevice> getBondedDevices() {
+        List<DiscoveredDevice> devices = new ArrayList<DiscoveredDevice>();
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null) {
+            return devices;
+        }
+        Set<BluetoothDevice> bonded = adapter.getBondedDevices();
+        if (bonded != null) {
+            for (BluetoothDevice device : bonded) {
+                devices.add(toDevice(device, DiscoveredDevice.NO_RSSI, 0));
+            }
+        }
+        return devices;
+    }
+
+    @Override
+    public synchronized boolean startDiscovery(final Listener listener) {
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null) {
+            return false;
+        }
+        unregister();
+        if (adapter.isDiscovering()) {
+            adapter.cancelDiscovery();
+        }
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String action = intent.getAction();
+                if (BluetoothDevice.ACTION_FOUND.equals(action)) {
+                    BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                    if (device != null) {
+                        int rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, (short) DiscoveredDevice.NO_RSSI);
+                        listener.onDeviceFound(toDevice(device, rssi, System.currentTimeMillis()));
+                    }
+                } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
+                    if (unregister(this)) {
+                        listener.onDiscoveryFinished();
+                    }
+                }
+            }
+        };
+        IntentFilter filter = new IntentFilter(BluetoothDevice.ACTION_FOUND);
+        filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+        mActivity.getApplicationContext().registerReceiver(receiver, filter);
+        mReceiver = receiver;
+        if (!adapter.startDiscovery()) {
+            unregister();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void cancelDiscovery() {
+        unregister();
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter != null) {
+            adapter.cancelDiscovery();
+        }
+    }
+
+    private synchronized boolean unregister(BroadcastReceiver receiver) {
+        if (mReceiver != receiver) {
+            return false;
+        }
+        unregister();
+        return true;
+    }
+
+    private void unregister() {
+        if (mReceiver == null) {
+            return;
+        }
+        try {
+            mActivity.getApplicationContext().unregisterReceiver(mReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, e.getMessage());
+        }
+        mReceiver = null;
+    }
+
+    private static DiscoveredDevice toDevice(BluetoothDevice device, int rssi, long lastSeen) {
+        int type = DiscoveredDevice.TYPE_UNKNOWN;
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            type = device.getType();
+        }
+        BluetoothClass bluetoothClass = device.getBluetoothClass();
+        return new DiscoveredDevice(device.getAddress(), device.getName(), type,
+                bluetoothClass != null ? bluetoothClass.getDeviceClass() : DiscoveredDevice.NO_CLASS,
+                rssi, device.getBondState() == BluetoothDevice.BOND_BONDED, lastSeen);
+    }
+}
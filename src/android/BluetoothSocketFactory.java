@@ -0,0 +1,296 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+import android.util.Log;
+
+/**
+ * Conexão RFCOMM (perfil SPP) com impressoras Bluetooth
+ */
+public class BluetoothSocketFactory implements PrinterSocketFactory {
+    private static final String LOG_TAG = "BluetoothPrinter";
+    private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    /**
+     * Formas de criar o socket RFCOMM, na ordem em que são tentadas
+     */
+    public enum Strategy {
+        SECURE("secure") {
+            @Override
+            BluetoothSocket create(BluetoothDevice device) throws IOException {
+                return device.createRfcommSocketToServiceRecord(SPP_UUID);
+            }
+        },
+        INSECURE("insecure") {
+            @Override
+            BluetoothSocket create(BluetoothDevice device) throws IOException {
+                return device.createInsecureRfcommSocketToServiceRecord(SPP_UUID);
+            }
+        },
+        CHANNEL_1("channel1") {
+            @Override
+            BluetoothSocket create(BluetoothDevice device) throws IOException {
+                try {
+                    return (BluetoothSocket) channelMethod().invoke(device, 1);
+                } catch (Exception e) {
+                    throw new IOException("Falha ao criar comunicação: " + e.getMessage());
+                }
+            }
+        };
+
+        private final String mName;
+
+        Strategy(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        abstract BluetoothSocket create(BluetoothDevice device) throws IOException;
+    }
+
+    private static volatile Method sChannelMethod;
+
+    private final Map<String, Strategy> mStrategies = new ConcurrentHashMap<String, Strategy>();
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final AtomicLong mFailures = new AtomicLong();
+    private volatile boolean mParallel;
+    private ExecutorService mExecutor;
+
+    @Override
+    public PrinterSocket connect(String address) throws IOException {
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null) {
+            throw new IOException("Bluetooth adapter not available");
+        }
+        BluetoothDevice device = adapter.getRemoteDevice(address);
+        adapter.cancelDiscovery();
+
+        long start = System.currentTimeMillis();
+        try {
+            BluetoothSocket socket = null;
+            Strategy known = mStrategies.get(address);
+            if (known != null) {
+                try {
+                    socket = connect(known, device);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Falha na conexão " + known.getName() + ": " + e.getMessage());
+                    mStrategies.remove(address);
+                }
+            }
+            if (socket == null) {
+                socket = mParallel ? connectInParallel(device, address) : connectInOrder(device, address);
+            }
+            mLatency.record(System.currentTimeMillis() - start);
+            return new BluetoothPrinterSocket(socket);
+        } catch (IOException e) {
+            mFailures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Tenta todas as estratégias ao mesmo tempo na próxima conexão sem estratégia conhecida
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        mParallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return mParallel;
+    }
+
+    /**
+     * Esquece as estratégias já descobertas
+     */
+    public void clearStrategies() {
+        mStrategies.clear();
+    }
+
+    /**
+     * @param address
+     * @return Strategy que conectou da última vez, ou null
+     */
+    public Strategy getStrategy(String address) {
+        return mStrategies.get(address);
+    }
+
+    public LatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    public long getFailures() {
+        return mFailures.get();
+    }
+
+    private BluetoothSocket connectInOrder(BluetoothDevice device, String address) throws IOException {
+        IOException failure = null;
+        for (Strategy strategy : Strategy.values()) {
+            try {
+                BluetoothSocket socket = connect(strategy, device);
+                mStrategies.put(address, strategy);
+                return socket;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Falha na conexão " + strategy.getName() + ": " + e.getMessage());
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private BluetoothSocket connectInParallel(final BluetoothDevice device, String address) throws IOException {
+        final AtomicReference<Object> winner = new AtomicReference<Object>();
+        final List<BluetoothSocket> sockets = new ArrayList<BluetoothSocket>();
+        CompletionService<Strategy> completion = new ExecutorCompletionService<Strategy>(executor());
+        Strategy[] strategies = Strategy.values();
+        for (final Strategy strategy : strategies) {
+            completion.submit(new Callable<Strategy>() {
+                @Override
+                public Strategy call() throws IOException {
+                    BluetoothSocket socket = strategy.create(device);
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+                    try {
+                        socket.connect();
+                    } catch (IOException e) {
+                        closeQuietly(socket);
+                        throw e;
+                    }
+                    if (!winner.compareAndSet(null, socket)) {
+                        closeQuietly(socket);
+                        throw new IOException("Another connection was faster");
+                    }
+                    return strategy;
+                }
+            });
+        }
+
+        IOException failure = null;
+        BluetoothSocket result = null;
+        try {
+            for (int i = 0; i < strategies.length; i++) {
+                try {
+                    Strategy strategy = completion.take().get();
+                    mStrategies.put(address, strategy);
+                    result = (BluetoothSocket) winner.get();
+                    return result;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof IOException ? (IOException) cause : new IOException(String.valueOf(cause));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new IOException("Connection interrupted");
+        } finally {
+            // sem resultado, impede que uma conexão atrasada vença depois da desistência
+            winner.compareAndSet(null, sockets);
+            synchronized (sockets) {
+                for (BluetoothSocket socket : sockets) {
+                    if (socket != result) {
+                        closeQuietly(socket);
+                    }
+                }
+            }
+        }
+        throw failure;
+    }
+
+    private static BluetoothSocket connect(Strategy strategy, BluetoothDevice device) throws IOException {
+        BluetoothSocket socket = strategy.create(device);
+        try {
+            socket.connect();
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * BluetoothDevice.createRfcommSocket(int) não é público; o Method é resolvido uma única vez
+     */
+    private static Method channelMethod() throws NoSuchMethodException {
+        Method method = sChannelMethod;
+        if (method == null) {
+            method = BluetoothDevice.class.getMethod("createRfcommSocket", new Class[] { int.class });
+            sChannelMethod = method;
+        }
+        return method;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatecsPrinter-connect");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mExecutor;
+    }
+
+    private static void closeQuietly(BluetoothSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Falha ao fechar o socket: " + e.getMessage());
+        }
+    }
+
+    private static class BluetoothPrinterSocket implements PrinterSocket {
+        private final BluetoothSocket mSocket;
+
+        BluetoothPrinterSocket(BluetoothSocket socket) {
+            mSocket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return mSocket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return mSocket.getOutputStream();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mSocket.isConnected();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mSocket.close();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agrupa as escritas no socket em blocos do tamanho configurado. O Printer já envia blocos de até
+ * 2048 bytes, então um bloco menor que isso só divide as escritas dele; usado apenas no modo raw
+ */
+public class CoalescingOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+    public static final long DEFAULT_MAX_DELAY = 20;
+
+    private static ScheduledExecutorService sScheduler;
+
+    private final byte[] mBuffer;
+    private final long mMaxDelay;
+    private final PrinterMetrics mMetrics;
+    private int mCount;
+    private ScheduledFuture<?> mScheduledFlush;
+    private IOException mFailure;
+    private volatile long mWrites;
+    private volatile long mBytes;
+
+    public CoalescingOutputStream(OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_DELAY, null);
+    }
+
+    /**
+     * @param out stream do socket
+     * @param chunkSize tamanho de cada escrita no socket
+     * @param maxDelay tempo máximo, em ms, que um byte espera no buffer sem flush; 0 espera o flush
+     * @param metrics recebe o tamanho de cada escrita, ou null
+     */
+    public CoalescingOutputStream(OutputStream out, int chunkSize, long maxDelay, PrinterMetrics metrics) {
+        super(out);
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+        mBuffer = new byte[chunkSize];
+        mMaxDelay = maxDelay;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        throwFailure();
+        int chunk = mBuffer.length;
+        if (mCount > 0) {
+            int copied = Math.min(len, chunk - mCount);
+            System.arraycopy(b, off, mBuffer, mCount, copied);
+            mCount += copied;
+            off += copied;
+            len -= copied;
+            if (mCount < chunk) {
+                scheduleFlush();
+                return;
+            }
+            drain();
+        }
+        int direct = len - len % chunk;
+        for (int sent = 0; sent < direct; sent += chunk) {
+            send(b, off + sent, chunk);
+        }
+        if (direct < len) {
+            System.arraycopy(b, off + direct, mBuffer, 0, len - direct);
+            mCount = len - direct;
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        throwFailure();
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                cancelFlush();
+                if (mFailure == null) {
+                    drain();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return quantidade de escritas no socket
+     */
+    public long getWrites() {
+        return mWrites;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return tamanho médio das escritas no socket
+     */
+    public long getAverageChunk() {
+        long writes = mWrites;
+        return writes == 0 ? 0 : mBytes / writes;
+    }
+
+    private void drain() throws IOException {
+        cancelFlush();
+        if (mCount > 0) {
+            int count = mCount;
+            mCount = 0;
+            send(mBuffer, 0, count);
+        }
+    }
+
+    private void send(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        mWrites++;
+        mBytes += len;
+        if (mMetrics != null) {
+            mMetrics.recordSocketWrite(len);
+        }
+    }
+
+    /**
+     * Um erro no envio por tempo é entregue na próxima escrita ou flush
+     */
+    private void throwFailure() throws IOException {
+        if (mFailure != null) {
+            IOException failure = mFailure;
+            mFailure = null;
+            throw failure;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (mMaxDelay <= 0 || mScheduledFlush != null) {
+            return;
+        }
+        mScheduledFlush = scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CoalescingOutputStream.this) {
+                    mScheduledFlush = null;
+                    try {
+                        drain();
+                        out.flush();
+                    } catch (IOException e) {
+                        mFailure = e;
+                    }
+                }
+            }
+        }, mMaxDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelFlush() {
+        if (mScheduledFlush != null) {
+            mScheduledFlush.cancel(false);
+            mScheduledFlush = null;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (sScheduler == null) {
+            sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatecsPrinter-output");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sScheduler;
+    }
+}
@@ -0,0 +1,37 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream que conta os bytes enviados à impressora
+ */
+public class CountingOutputStream extends FilterOutputStream {
+    private volatile long mCount;
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        mCount += len;
+    }
+
+    /**
+     * Total de bytes escritos; só a fila de impressão escreve, as outras threads apenas leem
+     *
+     * @return long
+     */
+    public long getCount() {
+        return mCount;
+    }
+}
@@ -1,15 +1,19 @@
 package com.giorgiofellipe.datecsprinter;
 
 import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
 import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import java.util.EnumSet;
+
 public class DatecsPrinter extends CordovaPlugin {
-	private static final DatecsSDKWrapper printer = new DatecsSDKWrapper();
+	private static final PrinterPool pool = new PrinterPool();
 	private enum Option {
 		listBluetoothDevices,
 				connect,
@@ -21,19 +25,58 @@ public class DatecsPrinter extends CordovaPlugin {
 				setBarcode,
 				printBarcode,
 				printImage,
+				printImageBinary,
 				printLogo,
-				printSelfTest;
+				printSelfTest,
+				printBatch,
+				cacheImage,
+				setImageCacheLimit,
+				getImageCacheStats,
+				beginDocument,
+				appendChunk,
+				endDocument,
+				subscribeEvents,
+				unsubscribeEvents,
+				setAutoReconnect,
+				getReconnectStats,
+				configurePool,
+				listConnectedPrinters,
+				setParallelConnect,
+				getConnectStats,
+				registerTemplate,
+				printTemplate,
+				printBytes,
+				printQRCode,
+				setNativeQRCode,
+				getSpoolStats,
+				clearSpool,
+				getHealth,
+				configureHealth,
+				getMetrics,
+				setSimulator,
+				configureOutput,
+				setImageCompression,
+				discoverDevices,
+				stopDiscovery,
+				cancelJob;
 	}
 
+	/**
+	 * Ações que imprimem; aceitam "jobId" e "priority" no objeto de opções (ver optionsIndex)
+	 */
+	private static final EnumSet<Option> PRINT_ACTIONS = EnumSet.of(Option.feedPaper, Option.printText,
+			Option.printBarcode, Option.printImage, Option.printImageBinary, Option.printLogo, Option.printSelfTest,
+			Option.printBatch, Option.beginDocument, Option.appendChunk, Option.endDocument, Option.printQRCode,
+			Option.printBytes, Option.printTemplate);
+
 	public void initialize(CordovaInterface cordova, CordovaWebView webView) {
 		super.initialize(cordova, webView);
-		printer.setWebView(webView);
+		pool.setWebView(webView);
 	}
 
 	@Override
 	public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-		printer.setCordova(cordova);
-		printer.setCallbackContext(callbackContext);
+		pool.setCordova(cordova);
 
 		Option option = null;
 		try {
@@ -41,61 +84,325 @@ public class DatecsPrinter extends CordovaPlugin {
 		} catch (Exception e) {
 			return false;
 		}
-		switch (option) {
-			case listBluetoothDevices:
-				printer.getBluetoothPairedDevices(callbackContext);
-				break;
-			case connect:
-				printer.setAddress(args.getString(0));
-				printer.connect(callbackContext);
-				break;
-			case disconnect:
-				try {
-					printer.closeActiveConnections();
-					callbackContext.success("Impressora desconectada");
-				} catch (Exception e) {
-					callbackContext.error("Erro ao desconectar impressora: " + e.getMessage());
+		if (option != Option.getMetrics) {
+			callbackContext = new MeteredCallbackContext(action, callbackContext, webView, pool.getMetrics());
+		}
+		if (PRINT_ACTIONS.contains(option)) {
+			JSONObject jobOptions = args.optJSONObject(optionsIndex(option));
+			String jobId = optJobId(jobOptions);
+			JobPriority priority;
+			try {
+				priority = JobPriority.fromName(jobOptions == null ? null : jobOptions.optString("priority", null));
+			} catch (IllegalArgumentException e) {
+				callbackContext.error(e.getMessage());
+				return true;
+			}
+			if (jobId != null || priority != JobPriority.NORMAL) {
+				callbackContext = pool.getJobRegistry().begin(jobId, priority, callbackContext, webView);
+				if (callbackContext == null) {
+					return true;
 				}
-				break;
-			case feedPaper:
-				printer.feedPaper(args.getInt(0));
-				break;
-			case printText:
-				String text = args.getString(0);				
-				printer.printTaggedText(text);
-				break;
-			case getStatus:
-				printer.getStatus();
-				break;
-			case getTemperature:
-				printer.getTemperature();
-				break;
-			case setBarcode:
-				int align = args.getInt(0);
-				boolean small = args.getBoolean(1);
-				int scale = args.getInt(2);
-				int hri = args.getInt(3);
-				int height = args.getInt(4);
-				printer.setBarcode(align, small, scale, hri, height);
-				break;
+			}
+		}
+		try {
+			switch (option) {
+				case listBluetoothDevices:
+					pool.get(null).getBluetoothPairedDevices(callbackContext);
+					break;
+				case discoverDevices:
+					JSONObject discoveryOptions = args.optJSONObject(0);
+					if (discoveryOptions == null) {
+						discoveryOptions = new JSONObject();
+					}
+					DeviceDiscovery.Filter filter;
+					try {
+						filter = new DeviceDiscovery.Filter(discoveryOptions.optString("namePattern", null),
+								discoveryOptions.optBoolean("includeUnpaired", true),
+								discoveryOptions.optBoolean("all", false));
+					} catch (IllegalArgumentException e) {
+						callbackContext.error("Padrão de nome inválido: " + e.getMessage());
+						break;
+					}
+					pool.get(null).discoverDevices(filter,
+							discoveryOptions.optLong("timeout", DeviceDiscovery.DEFAULT_TIMEOUT),
+							discoveryOptions.optLong("maxAge", DeviceDiscovery.DEFAULT_MAX_AGE),
+							discoveryOptions.optBoolean("requestEnable", false),
+							callbackContext);
+					break;
+				case stopDiscovery:
+					pool.get(null).stopDiscovery(callbackContext);
+					break;
+				case cancelJob:
+					JSONObject cancelResult = new JSONObject();
+					cancelResult.put("jobId", args.getString(0));
+					cancelResult.put("state", pool.cancelJob(args.getString(0)));
+					callbackContext.success(cancelResult);
+					break;
+				case connect:
+					JSONObject connectOptions = args.optJSONObject(1);
+					pool.acquire(args.getString(0)).connect(
+							connectOptions != null && connectOptions.optBoolean("showDialog", false),
+							connectOptions != null && connectOptions.optBoolean("progress", false),
+							callbackContext);
+					break;
+				case disconnect:
+					try {
+						String address = optString(args, 0);
+						if (address == null || address.length() == 0) {
+							pool.closeAll();
+						} else {
+							pool.close(address);
+						}
+						callbackContext.success("Impressora desconectada");
+					} catch (Exception e) {
+						callbackContext.error("Erro ao desconectar impressora: " + e.getMessage());
+					}
+					break;
+				case feedPaper:
+					target(args, 1).feedPaper(args.getInt(0), callbackContext);
+					break;
+				case printText:
+					String text = args.getString(0);				
+					JSONObject textOptions = args.optJSONObject(1);
+					target(args, 1).printTaggedText(text,
+							textOptions == null ? null : textOptions.optString("charset", null),
+							textOptions == null ? -1 : textOptions.optInt("codeTable", -1),
+							callbackContext);
+					break;
+				case getStatus:
+					target(args, 0).getStatus(optRefresh(args, 0), callbackContext);
+					break;
+				case getTemperature:
+					target(args, 0).getTemperature(optRefresh(args, 0), callbackContext);
+					break;
+				case setBarcode:
+					int align = args.getInt(0);
+					boolean small = args.getBoolean(1);
+					int scale = args.getInt(2);
+					int hri = args.getInt(3);
+					int height = args.getInt(4);
+					target(args, 5).setBarcode(align, small, scale, hri, height, callbackContext);
+					break;
+				case printBarcode:
+					int type = args.getInt(0);
+					String data = args.getString(1);
+					target(args, 2).printBarcode(type, data, callbackContext);
+					break;
+				case printImage:
+					String image = args.getString(0);
+					int imgWidth = args.getInt(1);
+					int imgHeight = args.getInt(2);
+					int imgAlign = args.getInt(3);
+					String dithering = optString(args, 4);
+					target(args, 5).printImage(image, imgWidth, imgHeight, imgAlign, dithering, callbackContext);
+					break;
+				case printImageBinary:
+					byte[] raster = new CordovaArgs(args).getArrayBuffer(0);
+					target(args, 4).printImageBinary(raster, args.getInt(1), args.getInt(2), args.getInt(3), callbackContext);
+					break;
+				case printLogo:
+					target(args, 1).printLogo(args.getString(0), callbackContext);
+					break;
+				case printSelfTest:
+					target(args, 0).printSelfTest(callbackContext);
+					break;
+				case printBatch:
+					target(args, 1).printBatch(args.getJSONArray(0), callbackContext);
+					break;
+				case cacheImage:
+					pool.get(null).cacheImage(args.getString(0), args.getString(1), args.getInt(2), args.getInt(3), args.getInt(4), optString(args, 5), optString(args, 6), callbackContext);
+					break;
+				case setImageCacheLimit:
+					pool.get(null).setImageCacheLimit(args.getInt(0), callbackContext);
+					break;
+				case getImageCacheStats:
+					pool.get(null).getImageCacheStats(callbackContext);
+					break;
+				case beginDocument:
+					target(args, 0).beginDocument(callbackContext);
+					break;
+				case appendChunk:
+					target(args, 1).appendChunk(args.getString(0), callbackContext);
+					break;
+				case endDocument:
+					target(args, 0).endDocument(callbackContext);
+					break;
+				case subscribeEvents:
+					pool.get(null).subscribeEvents(callbackContext);
+					break;
+				case unsubscribeEvents:
+					pool.get(null).unsubscribeEvents(callbackContext);
+					break;
+				case setAutoReconnect:
+					target(args, 4).setAutoReconnect(args.getBoolean(0),
+							args.optInt(1, ReconnectSupervisor.DEFAULT_MAX_ATTEMPTS),
+							args.optLong(2, ReconnectSupervisor.DEFAULT_BASE_DELAY),
+							args.optLong(3, ReconnectSupervisor.DEFAULT_MAX_DELAY),
+							callbackContext);
+					break;
+				case getReconnectStats:
+					target(args, 0).getReconnectStats(callbackContext);
+					break;
+				case configurePool:
+					pool.configure(args.optInt(0, PrinterPool.DEFAULT_MAX_SIZE), args.optLong(1, PrinterPool.DEFAULT_IDLE_TIMEOUT));
+					callbackContext.success();
+					break;
+				case listConnectedPrinters:
+					JSONArray connected = new JSONArray();
+					for (DatecsSDKWrapper pooled : pool.getPrinters()) {
+						JSONObject json = new JSONObject();
+						json.put("address", pooled.getAddress());
+						json.put("connected", pooled.isConnected());
+						json.put("lastUsed", pooled.getLastUsed());
+						connected.put(json);
+					}
+					callbackContext.success(connected);
+					break;
+				case setParallelConnect:
+					pool.setParallelConnect(args.getBoolean(0));
+					callbackContext.success();
+					break;
+				case getConnectStats:
+					callbackContext.success(pool.getConnectStats());
+					break;
+				case registerTemplate:
+					JSONObject templateOptions = args.optJSONObject(2);
+					pool.get(null).registerTemplate(args.getString(0), args.getString(1),
+							templateOptions == null ? null : templateOptions.optString("charset", null), callbackContext);
+					break;
+				case printQRCode:
+					JSONObject qrOptions = args.optJSONObject(4);
+					target(args, 4).printQRCode(args.getString(0), args.getInt(1), args.getInt(2), args.getInt(3),
+							qrOptions == null ? null : qrOptions.optString("mode", null), callbackContext);
+					break;
+				case setNativeQRCode:
+					target(args, 1).setNativeQRCode(args.getBoolean(0), callbackContext);
+					break;
+				case printBytes:
+					target(args, 1).printBytes(new CordovaArgs(args).getArrayBuffer(0), callbackContext);
+					break;
+				case printTemplate:
+					target(args, 2).printTemplate(args.getString(0), args.optJSONObject(1), callbackContext);
+					break;
+				case getSpoolStats:
+					target(args, 0).getSpoolStats(callbackContext);
+					break;
+				case clearSpool:
+					target(args, 0).clearSpool(callbackContext);
+					break;
+				case getMetrics:
+					JSONObject metricsOptions = args.optJSONObject(0);
+					if (metricsOptions != null && metricsOptions.optBoolean("reset", false)) {
+						callbackContext.success(pool.getMetrics().toJSONAndReset());
+					} else {
+						callbackContext.success(pool.getMetrics().toJSON());
+					}
+					break;
+				case setSimulator:
+					JSONObject simulatorOptions = args.optJSONObject(0);
+					if (simulatorOptions == null) {
+						pool.setSocketFactory(null);
+					} else {
+						pool.setSocketFactory(new PrinterSimulator()
+								.setBaudRate(simulatorOptions.optInt("baudRate", 0))
+								.setLatency(simulatorOptions.optLong("latency", 0))
+								.setConnectDelay(simulatorOptions.optLong("connectDelay", 0))
+								.setPaperOut(simulatorOptions.optBoolean("paperOut", false))
+								.setTemperature(simulatorOptions.optInt("temperature", 40))
+								.setProtocol(simulatorOptions.optBoolean("protocol", false)));
+					}
+					callbackContext.success();
+					break;
+				case configureOutput:
+					target(args, 2).configureOutput(args.optInt(0, CoalescingOutputStream.DEFAULT_CHUNK_SIZE),
+							args.optLong(1, CoalescingOutputStream.DEFAULT_MAX_DELAY), callbackContext);
+					break;
+				case setImageCompression:
+					target(args, 1).setImageCompression(args.getString(0), callbackContext);
+					break;
+				case getHealth:
+					target(args, 0).getHealth(optRefresh(args, 0), callbackContext);
+					break;
+				case configureHealth:
+					target(args, 2).configureHealth(args.optLong(0, PrinterHealth.DEFAULT_TTL), args.optLong(1, 0), callbackContext);
+					break;
+			}
+		} catch (JSONException e) {
+			// responde pelo contexto do job para que o registro não fique sem resultado
+			callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+		}
+		return true;
+	}
+
+	/**
+	 * Posição do objeto de opções nos argumentos de uma ação de impressão, a mesma usada em target.
+	 * Não é o último argumento: printTemplate, por exemplo, recebe os dados do template antes dele
+	 *
+	 * @param option
+	 * @return int
+	 */
+	private static int optionsIndex(Option option) {
+		switch (option) {
+			case printSelfTest:
+			case beginDocument:
+			case endDocument:
+				return 0;
 			case printBarcode:
-				int type = args.getInt(0);
-				String data = args.getString(1);
-				printer.printBarcode(type, data);
-				break;
+			case printTemplate:
+				return 2;
+			case printImageBinary:
+			case printQRCode:
+				return 4;
 			case printImage:
-				String image = args.getString(0);
-				int imgWidth = args.getInt(1);
-				int imgHeight = args.getInt(2);
-				int imgAlign = args.getInt(3);
-				printer.printImage(image, imgWidth, imgHeight, imgAlign);
-				break;
-			case printLogo:
-				break;
-			case printSelfTest:
-				printer.printSelfTest();
-				break;
+				return 5;
+			default:
+				return 1;
 		}
-		return true;
+	}
+
+	/**
+	 * Campo "jobId" do objeto de opções das ações de impressão
+	 *
+	 * @param options
+	 * @return String ou null
+	 */
+	private static String optJobId(JSONObject options) {
+		String jobId = options == null ? null : options.optString("jobId", null);
+		return jobId == null || jobId.length() == 0 ? null : jobId;
+	}
+
+	/**
+	 * Campo "refresh" do objeto de opções: ignora o cache de estado e consulta a impressora
+	 *
+	 * @param args
+	 * @param index
+	 * @return boolean
+	 */
+	private boolean optRefresh(JSONArray args, int index) {
+		JSONObject options = args.optJSONObject(index);
+		return options != null && options.optBoolean("refresh", false);
+	}
+
+	/**
+	 * Impressora indicada pelo campo "address" do objeto de opções na posição index dos argumentos
+	 *
+	 * @param args
+	 * @param index
+	 * @return DatecsSDKWrapper
+	 */
+	private DatecsSDKWrapper target(JSONArray args, int index) {
+		JSONObject options = args.optJSONObject(index);
+		return pool.get(options == null ? null : options.optString("address", null));
+	}
+
+	/**
+	 * Argumento opcional; null quando ausente ou null no JavaScript (optString devolveria "null")
+	 *
+	 * @param args
+	 * @param index
+	 * @return String
+	 */
+	private static String optString(JSONArray args, int index) throws JSONException {
+		return args.isNull(index) ? null : args.getString(index);
 	}
 }
@@ -1,7 +1,6 @@
 package com.giorgiofellipe.datecsprinter;
 
 import org.apache.cordova.CallbackContext;
-import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.PluginResult;
@@ -12,48 +11,111 @@ import org.json.JSONException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.Exception;
-import java.util.Hashtable;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Set;
-import java.util.UUID;
-import java.net.Socket;
-import java.net.UnknownHostException;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.reflect.Field;
 
-import android.app.Activity;
 import android.app.ProgressDialog;
-import android.widget.Toast;
 import android.util.Log;
 import android.content.Intent;
-import android.os.Handler;
 import android.os.Bundle;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Base64;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
-import com.datecs.api.BuildInfo;
-import com.datecs.api.printer.PrinterInformation;
 import com.datecs.api.printer.Printer;
 import com.datecs.api.printer.ProtocolAdapter;
 
 public class DatecsSDKWrapper {
     private static final String LOG_TAG = "BluetoothPrinter";
+    private static final int MAX_PENDING_DOCUMENT_CHARS = 32 * 1024;
+    private static final int MAX_TAG_LENGTH = 8;
+    private static final int MAX_HELD_JOBS = 100;
+    private static final int TEXT_CHUNK_CHARS = 1024;
+    private static final AtomicLong sJobSequence = new AtomicLong();
+
+    public static final String JOB_CANCELLED = "cancelled";
+    public static final String JOB_STOPPING = "stopping";
+    public static final String JOB_RUNNING = "running";
+    public static final String JOB_NOT_FOUND = "notFound";
+    private static ScheduledExecutorService sHealthScheduler;
+    private static ExecutorService sTeardownExecutor;
+    private static final Field sPrinterBuffer = printerBufferField();
     private Printer mPrinter;
     private ProtocolAdapter mProtocolAdapter;
-    private BluetoothSocket mBluetoothSocket;
-    private boolean mRestart;
+    private volatile PrinterSocketFactory mSocketFactory = new BluetoothSocketFactory();
+    private PrinterSocketFactory.PrinterSocket mSocket;
+    private boolean mAutoReconnect = true;
+    private volatile boolean mNativeQRCode;
+    private PrintJournal mJournal;
+    private volatile SpoolOutputStream mSpoolStream;
+    private final PrinterHealth mHealth = new PrinterHealth();
+    private ScheduledFuture<?> mHealthRefresh;
+    private final List<PrintJob> mHeldJobs = new ArrayList<PrintJob>();
     private String mAddress;
-    private CallbackContext mConnectCallbackContext;
-    private CallbackContext mCallbackContext;
-    private ProgressDialog mDialog;
     private CordovaInterface mCordova;
     private CordovaWebView mWebView;
+    private ExecutorService mJobExecutor;
+    private PriorityBlockingQueue<Runnable> mJobQueue;
+    private volatile PrintJob mRunningJob;
+    private volatile PrintJob mLastJob;
+    private volatile boolean mConnectionLost;
+    private volatile PrinterEventReader mEventReader;
+    private final AtomicInteger mActiveJobs = new AtomicInteger();
+    private final PrinterEventDispatcher mEventDispatcher;
+    private final PrinterMetrics mMetrics;
+    private final DeviceDiscovery mDiscovery;
+    private volatile CountingOutputStream mCountingStream;
+    private int mChunkSize = CoalescingOutputStream.DEFAULT_CHUNK_SIZE;
+    private long mMaxWriteDelay = CoalescingOutputStream.DEFAULT_MAX_DELAY;
+    private volatile MonochromeImage.Compression mImageCompression = MonochromeImage.Compression.NONE;
+    private final ReconnectSupervisor mReconnectSupervisor = new ReconnectSupervisor(new ReconnectSupervisor.Target() {
+        @Override
+        public void reconnect() throws IOException {
+            openConnection(mAddress, true, null);
+        }
+
+        @Override
+        public void onReconnected(int attempts, long elapsed) {
+            Log.i(LOG_TAG, "Impressora reconectada após " + attempts + " tentativa(s) em " + elapsed + "ms");
+            mMetrics.recordReconnect();
+            sendStatusUpdate(true);
+        }
+
+        @Override
+        public void onGaveUp(IOException lastError) {
+            Log.e(LOG_TAG, "Falha ao reconectar: " + lastError.getMessage());
+            mMetrics.recordReconnectFailure();
+            rejectHeldJobs();
+        }
+    }, "DatecsPrinter-reconnect");
+    private final ImageCache mImageCache;
+    private final ImageCache mQRCodeCache;
+    private final Map<String, PrintTemplate> mTemplates;
+    private final Map<String, TextEncoder> mTextEncoders = new HashMap<String, TextEncoder>();
+    private volatile long mLastUsed = System.currentTimeMillis();
+    private final AtomicInteger mPendingDocumentChars = new AtomicInteger();
+    private boolean mDocumentOpen;
+    private String mDocumentCarry = "";
+    private TextEncoder mDocumentEncoder;
 
     /**
      * Interface de eventos da Impressora
@@ -76,6 +138,9 @@ public class DatecsSDKWrapper {
 
         @Override
         public void onPaperReady(boolean state) {
+            onPrinterEvent();
+            mHealth.setPaper(state);
+            mEventDispatcher.post(mAddress, PrinterEventDispatcher.PAPER, state);
             if (state) {
                 showToast("Papel ok");
             } else {
@@ -85,6 +150,9 @@ public class DatecsSDKWrapper {
 
         @Override
         public void onOverHeated(boolean state) {
+            onPrinterEvent();
+            mHealth.setOverheated(state);
+            mEventDispatcher.post(mAddress, PrinterEventDispatcher.OVERHEAT, state);
             if (state) {
                 showToast("Superaquecimento");
             }
@@ -92,12 +160,40 @@ public class DatecsSDKWrapper {
 
         @Override
         public void onLowBattery(boolean state) {
+            onPrinterEvent();
+            mHealth.setLowBattery(state);
+            mEventDispatcher.post(mAddress, PrinterEventDispatcher.LOW_BATTERY, state);
             if (state) {
                 showToast("Pouca bateria");
             }
         }
     };
 
+    /**
+     * @param imageCache cache de imagens, compartilhado entre as impressoras
+     * @param eventDispatcher destino dos eventos, compartilhado entre as impressoras
+     * @param metrics métricas, compartilhadas entre as impressoras
+     */
+    public DatecsSDKWrapper(ImageCache imageCache, ImageCache qrCodeCache, Map<String, PrintTemplate> templates,
+            PrinterEventDispatcher eventDispatcher, PrinterMetrics metrics, DeviceDiscovery discovery) {
+        mImageCache = imageCache;
+        mQRCodeCache = qrCodeCache;
+        mTemplates = templates;
+        mEventDispatcher = eventDispatcher;
+        mMetrics = metrics;
+        mDiscovery = discovery;
+    }
+
+    /**
+     * Avisa o leitor de eventos que a impressora se manifestou
+     */
+    private void onPrinterEvent() {
+        PrinterEventReader reader = mEventReader;
+        if (reader != null) {
+            reader.onEvent();
+        }
+    }
+
     private Map<Integer, String> errorCode = new HashMap<Integer, String>(){{
         put(1, "Adaptador Bluetooth não disponível");
         put(2, "Nenhum dispositivo Bluetooth encontrado");
@@ -110,6 +206,31 @@ public class DatecsSDKWrapper {
         put(9, "Erro ao imprimir página de teste");
         put(10, "Erro ao setar configurações do código de barras");
         put(11, "Erro ao imprimir imagem");
+        put(12, "Impressora não conectada");
+        put(13, "Endereço Bluetooth inválido");
+        put(14, "Erro ao conectar à impressora");
+        put(15, "Erro ao imprimir lote");
+        put(16, "Imagem não encontrada no cache");
+        put(17, "Erro ao armazenar imagem no cache");
+        put(18, "Erro ao imprimir documento");
+        put(19, "Nenhum documento aberto");
+        put(20, "Buffer do documento cheio, aguarde os trechos pendentes");
+        put(21, "Erro ao consultar reconexão");
+        put(22, "Erro ao consultar conexões");
+        put(23, "Template não encontrado");
+        put(24, "Template inválido");
+        put(25, "Erro ao imprimir template");
+        put(26, "Charset não suportado");
+        put(27, "Erro ao enviar dados");
+        put(28, "Erro ao imprimir QR Code");
+        put(29, "Erro ao acessar o spool");
+        put(30, "Erro ao consultar o estado da impressora");
+        put(31, "Modo de compressão de imagem inválido");
+        put(32, "Bluetooth desligado");
+        put(33, "Erro ao buscar dispositivos");
+        put(34, "Job guardado no spool, será impresso na reconexão");
+        put(35, "Job cancelado");
+        put(36, "Trecho maior que o buffer do documento");
     }};
 
     private JSONObject getErrorByCode(int code) {
@@ -117,6 +238,16 @@ public class DatecsSDKWrapper {
     }
 
     private JSONObject getErrorByCode(int code, Exception exception) {
+        return this.getErrorByCode(code, exception, true);
+    }
+
+    /**
+     * @param record false para erros que não são falhas, como o aviso de job no spool
+     */
+    private JSONObject getErrorByCode(int code, Exception exception, boolean record) {
+        if (record) {
+            mMetrics.recordError(code);
+        }
         JSONObject json = new JSONObject();
         try {
             json.put("errorCode", code);
@@ -132,48 +263,87 @@ public class DatecsSDKWrapper {
     }
 
     /**
-     * Busca todos os dispositivos Bluetooth pareados com o device
+     * Busca todos os dispositivos Bluetooth pareados com o device, fora da thread da ponte.
+     * Com o Bluetooth desligado pede para ligá-lo e responde com erro
      *
      * @param callbackContext
      */
-    protected void getBluetoothPairedDevices(CallbackContext callbackContext) {
-        BluetoothAdapter mBluetoothAdapter = null;
-        try {
-            mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-            if (mBluetoothAdapter == null) {
-                callbackContext.error(this.getErrorByCode(1));
-                return;
-            }
-            if (!mBluetoothAdapter.isEnabled()) {
-                Intent enableBluetooth = new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE);
-                this.mCordova.getActivity().startActivityForResult(enableBluetooth, 0);
-            }
-            Set<BluetoothDevice> pairedDevices = mBluetoothAdapter.getBondedDevices();
-            if (pairedDevices.size() > 0) {
-                JSONArray json = new JSONArray();
-                for (BluetoothDevice device : pairedDevices) {
-                    Hashtable map = new Hashtable();
-                    if(android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN_MR2) {
-                        map.put("type", device.getType());
-                    }else{
-                        map.put("type", "unknown");
+    protected void getBluetoothPairedDevices(final CallbackContext callbackContext) {
+        mCordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DiscoveryAdapter adapter = mDiscovery.getAdapter();
+                    if (adapter == null || !adapter.isAvailable()) {
+                        callbackContext.error(getErrorByCode(1));
+                        return;
+                    }
+                    if (!adapter.isEnabled()) {
+                        adapter.requestEnable();
+                        callbackContext.error(getErrorByCode(32));
+                        return;
+                    }
+                    List<DiscoveredDevice> pairedDevices = mDiscovery.getBondedDevices();
+                    if (pairedDevices.size() > 0) {
+                        JSONArray json = new JSONArray();
+                        for (DiscoveredDevice device : pairedDevices) {
+                            JSONObject jObj = new JSONObject();
+                            jObj.put("type", device.getType());
+                            jObj.put("address", device.getAddress());
+                            jObj.put("name", device.getName());
+                            json.put(jObj);
+                        }
+                        callbackContext.success(json);
+                    } else {
+                        callbackContext.error(getErrorByCode(2));
                     }
-                    map.put("address", device.getAddress());
-                    map.put("name", device.getName());
-                    JSONObject jObj = new JSONObject(map);
-                    json.put(jObj);
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, e.getMessage());
+                    callbackContext.error(e.getMessage());
                 }
-                callbackContext.success(json);
-            } else {
-                callbackContext.error(this.getErrorByCode(2));
             }
-        } catch (Exception e) {
-            Log.e(LOG_TAG, e.getMessage());
-            e.printStackTrace();
-            callbackContext.error(e.getMessage());
+        });
+    }
+
+    /**
+     * Stream paired devices and nearby printers to the callback as they are found
+     *
+     * @param filter
+     * @param timeout ms until the scan is stopped
+     * @param maxAge ms a cached unpaired device stays valid
+     * @param requestEnable ask the user to turn Bluetooth on when it is off
+     * @param callbackContext
+     */
+    public void discoverDevices(DeviceDiscovery.Filter filter, long timeout, long maxAge, boolean requestEnable, CallbackContext callbackContext) {
+        DiscoveryAdapter adapter = mDiscovery.getAdapter();
+        if (adapter == null || !adapter.isAvailable()) {
+            callbackContext.error(getErrorByCode(1));
+            return;
+        }
+        if (!adapter.isEnabled()) {
+            if (requestEnable) {
+                adapter.requestEnable();
+            }
+            callbackContext.error(getErrorByCode(32));
+            return;
+        }
+        try {
+            mDiscovery.discover(filter, timeout, maxAge, callbackContext);
+        } catch (IOException e) {
+            callbackContext.error(getErrorByCode(33, e));
         }
     }
 
+    /**
+     * Stop the running discovery; its callbacks receive the finished event
+     *
+     * @param callbackContext
+     */
+    public void stopDiscovery(CallbackContext callbackContext) {
+        mDiscovery.stop();
+        callbackContext.success();
+    }
+
     /**
      * Seta em memória o endereço da impressora cuja conexão está sendo estabelecida
      *
@@ -183,6 +353,29 @@ public class DatecsSDKWrapper {
         mAddress = address;
     }
 
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public synchronized boolean isConnected() {
+        return mPrinter != null;
+    }
+
+    /**
+     * Indica se a impressora pode ser desconectada por ociosidade
+     *
+     * @param idleTimeout
+     * @return boolean
+     */
+    public synchronized boolean isIdle(long idleTimeout) {
+        return mActiveJobs.get() == 0 && !mReconnectSupervisor.isActive()
+                && System.currentTimeMillis() - mLastUsed >= idleTimeout;
+    }
+
+    public long getLastUsed() {
+        return mLastUsed;
+    }
+
     protected void setWebView(CordovaWebView webView) {
         mWebView = webView;
     }
@@ -192,12 +385,22 @@ public class DatecsSDKWrapper {
     }
 
     /**
-     * CallbackContext de cada requisição, que efetivamente recebe os retornos dos métodos
+     * Define como a conexão física é aberta (Bluetooth por padrão); vale a partir da próxima conexão
      *
-     * @param callbackContext
+     * @param socketFactory
+     */
+    public void setSocketFactory(PrinterSocketFactory socketFactory) {
+        mSocketFactory = socketFactory;
+    }
+
+    /**
+     * Define o diário em que os jobs ficam registrados até serem impressos; vale a partir
+     * da próxima conexão
+     *
+     * @param journal
      */
-    public void setCallbackContext(CallbackContext callbackContext) {
-        mCallbackContext = callbackContext;
+    public synchronized void setJournal(PrintJournal journal) {
+        mJournal = journal;
     }
 
     /**
@@ -206,10 +409,26 @@ public class DatecsSDKWrapper {
      * @param callbackContext
      */
     protected void connect(CallbackContext callbackContext) {
-        mConnectCallbackContext = callbackContext;
+        connect(false, false, callbackContext);
+    }
+
+    /**
+     * Valida o endereço da impressora e efetua a conexão sem bloquear a interface
+     *
+     * @param showDialog exibe o ProgressDialog modal durante a conexão
+     * @param progress envia as etapas da conexão ao callback de sucesso
+     * @param callbackContext
+     */
+    protected void connect(boolean showDialog, boolean progress, CallbackContext callbackContext) {
+        if (isConnected()) {
+            connectFinished(progress, callbackContext);
+            return;
+        }
         closeActiveConnections();
         if (BluetoothAdapter.checkBluetoothAddress(mAddress)) {
-            establishBluetoothConnection(mAddress, callbackContext);
+            establishBluetoothConnection(mAddress, showDialog, progress, callbackContext);
+        } else {
+            callbackContext.error(this.getErrorByCode(13));
         }
     }
 
@@ -217,20 +436,109 @@ public class DatecsSDKWrapper {
      * Encerra todas as conexões com impressoras e dispositivos Bluetooth ativas
      */
     public synchronized void closeActiveConnections() {
-        closePrinterConnection();
+        mReconnectSupervisor.cancel();
+        rejectHeldJobs();
+        closePrinterConnection(false);
+        closeBluetoothConnection();
+    }
+
+    /**
+     * Encerra as conexões e fecha o diário; a instância não deve mais ser usada
+     */
+    public synchronized void release() {
+        closeActiveConnections();
+        mReconnectSupervisor.shutdown();
+        if (mHealthRefresh != null) {
+            mHealthRefresh.cancel(false);
+            mHealthRefresh = null;
+        }
+        if (mJournal != null) {
+            try {
+                mJournal.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, e.getMessage());
+            }
+            mJournal = null;
+        }
+    }
+
+    /**
+     * Trata a queda da conexão: guarda os jobs que ainda não começaram e, se habilitado,
+     * inicia a reconexão automática
+     *
+     * @param e
+     */
+    private synchronized void connectionLost(IOException e) {
+        if (mPrinter == null) {
+            return;
+        }
+        Log.e(LOG_TAG, "Conexão perdida: " + e.getMessage());
+        mMetrics.recordConnectionLost();
+        closePrinterConnection(mAutoReconnect);
         closeBluetoothConnection();
+        sendStatusUpdate(false);
+        if (mAutoReconnect) {
+            mReconnectSupervisor.start();
+        }
+    }
+
+    /**
+     * Trata, em outra thread, uma queda detectada na thread de jobs: encerrar a fila ali
+     * interromperia a própria thread no meio do tratamento da falha. Até lá, os jobs que
+     * chegarem à frente da fila são guardados como os que não começaram
+     *
+     * @param e
+     */
+    private void connectionLostLater(final IOException e) {
+        mConnectionLost = true;
+        teardownExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                connectionLost(e);
+            }
+        });
+    }
+
+    private static synchronized ExecutorService teardownExecutor() {
+        if (sTeardownExecutor == null) {
+            sTeardownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatecsPrinter-teardown");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sTeardownExecutor;
     }
 
     /**
      * Encerra a conexão com a impressora
+     *
+     * @param holdPendingJobs guarda os jobs que não começaram, para reenviá-los após reconectar
      */
-    private synchronized void closePrinterConnection() {
+    private synchronized void closePrinterConnection(boolean holdPendingJobs) {
+        PrinterEventReader reader = mEventReader;
+        mEventReader = null;
+        if (reader != null) {
+            reader.stop();
+        }
+        stopJobExecutor(holdPendingJobs);
+        mDocumentOpen = false;
+        mDocumentCarry = "";
+        mDocumentEncoder = null;
+
         if (mPrinter != null) {
             mPrinter.release();
+            mPrinter = null;
         }
+        mSpoolStream = null;
+        mHealth.clear();
 
         if (mProtocolAdapter != null) {
             mProtocolAdapter.release();
+            mProtocolAdapter = null;
         }
     }
 
@@ -238,14 +546,13 @@ public class DatecsSDKWrapper {
      * Finaliza o socket Bluetooth e encerra todas as conexões
      */
     private synchronized void closeBluetoothConnection() {
-        BluetoothSocket socket = mBluetoothSocket;
-        mBluetoothSocket = null;
+        PrinterSocketFactory.PrinterSocket socket = mSocket;
+        mSocket = null;
         if (socket != null) {
             try {
-                Thread.sleep(50);
                 socket.close();
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.e(LOG_TAG, "Falha ao fechar o socket: " + e.getMessage());
             }
         }
     }
@@ -254,65 +561,101 @@ public class DatecsSDKWrapper {
      * Efetiva a conexão com o dispositivo Bluetooth
      *
      * @param address
+     * @param showDialog
+     * @param progress
      * @param callbackContext
      */
-    private void establishBluetoothConnection(final String address, final CallbackContext callbackContext) {
-        runJob(new Runnable() {
+    private void establishBluetoothConnection(final String address, boolean showDialog, final boolean progress, final CallbackContext callbackContext) {
+        Runnable job = new Runnable() {
             @Override
             public void run() {
-                BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-                BluetoothDevice device = adapter.getRemoteDevice(address);
-                UUID uuid = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
-                InputStream in = null;
-                OutputStream out = null;
-                adapter.cancelDiscovery();
-
-                try {
-                    mBluetoothSocket = createBluetoothSocket(device, uuid, callbackContext);
-                    Thread.sleep(50);
-                    mBluetoothSocket.connect();
-                    in = mBluetoothSocket.getInputStream();
-                    out = mBluetoothSocket.getOutputStream();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    sendStatusUpdate(false);
-                    showError("Falha ao conectar: " + e.getMessage(), false);
-                    return;
-                }
-
                 try {
-                    initializePrinter(in, out, callbackContext);
+                    openConnection(address, false, progress ? callbackContext : null);
                     sendStatusUpdate(true);
                     showToast("Impressora Conectada!");
+                    connectFinished(progress, callbackContext);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    Log.e(LOG_TAG, "Falha ao conectar: " + e.getMessage());
                     sendStatusUpdate(false);
-                    showError("Falha ao inicializar: " + e.getMessage(), false);
-                    return;
+                    showError("Falha ao conectar: " + e.getMessage());
+                    callbackContext.error(getErrorByCode(14, e));
                 }
             }
-        }, "Impressora", "Conectando..");
+        };
+        if (showDialog) {
+            runJob(job, "Impressora", "Conectando..");
+        } else {
+            mCordova.getThreadPool().execute(job);
+        }
+    }
+
+    private void connectFinished(boolean progress, CallbackContext callbackContext) {
+        if (progress) {
+            sendConnectProgress(callbackContext, "connected", false);
+        } else {
+            callbackContext.success();
+        }
     }
 
     /**
-     * Cria um socket Bluetooth
+     * Envia uma etapa da conexão ao callback: connecting, initializing ou connected
      *
-     * @param device
-     * @param uuid
      * @param callbackContext
-     * @return BluetoothSocket
-     * @throws IOException
+     * @param stage
+     * @param keepCallback false na última etapa
      */
-    private BluetoothSocket createBluetoothSocket(BluetoothDevice device, UUID uuid, final CallbackContext callbackContext) throws IOException {
+    private void sendConnectProgress(CallbackContext callbackContext, String stage, boolean keepCallback) {
+        JSONObject json = new JSONObject();
         try {
-            Method method = device.getClass().getMethod("createRfcommSocketToServiceRecord", new Class[] { UUID.class });
-            return (BluetoothSocket) method.invoke(device, uuid);
-        } catch (Exception e) {
-            e.printStackTrace();
-            sendStatusUpdate(false);
-            showError("Falha ao criar comunicação: " + e.getMessage(), false);
+            json.put("address", mAddress);
+            json.put("stage", stage);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage());
+        }
+        PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+        result.setKeepCallback(keepCallback);
+        callbackContext.sendPluginResult(result);
+    }
+
+    /**
+     * Abre o socket e inicializa a impressora, reenviando os jobs guardados durante uma reconexão.
+     * Bloqueia durante o handshake, sem manter o lock do wrapper
+     *
+     * @param address
+     * @param reconnect true quando chamado pela reconexão automática
+     * @param progress callback que recebe as etapas da conexão, ou null
+     * @throws IOException
+     */
+    private void openConnection(String address, boolean reconnect, CallbackContext progress) throws IOException {
+        if (progress != null) {
+            sendConnectProgress(progress, "connecting", true);
+        }
+        PrinterSocketFactory.PrinterSocket socket = mSocketFactory.connect(address);
+        if (progress != null) {
+            sendConnectProgress(progress, "initializing", true);
+        }
+        synchronized (this) {
+            // a reconexão foi cancelada (disconnect ou release) enquanto o socket abria
+            if (reconnect && !mReconnectSupervisor.isActive()) {
+                try {
+                    socket.close();
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Falha ao fechar o socket: " + e.getMessage());
+                }
+                throw new IOException("Reconexão cancelada");
+            }
+            mSocket = socket;
+            try {
+                initializePrinter(socket.getInputStream(), socket.getOutputStream());
+            } catch (IOException e) {
+                closePrinterConnection(false);
+                closeBluetoothConnection();
+                throw e;
+            }
+            mMetrics.recordConnect();
+            replaySpool();
+            replayHeldJobs();
         }
-        return device.createRfcommSocketToServiceRecord(uuid);
     }
 
     /**
@@ -323,229 +666,1701 @@ public class DatecsSDKWrapper {
      * @throws IOException
      */
     protected void initializePrinter(InputStream inputStream, OutputStream outputStream, CallbackContext callbackContext) throws IOException {
+        initializePrinter(inputStream, outputStream);
+        callbackContext.success();
+    }
+
+    private synchronized void initializePrinter(InputStream inputStream, OutputStream outputStream) throws IOException {
         mProtocolAdapter = new ProtocolAdapter(inputStream, outputStream);
         if (mProtocolAdapter.isProtocolEnabled()) {
             final ProtocolAdapter.Channel channel = mProtocolAdapter.getChannel(ProtocolAdapter.CHANNEL_PRINTER);
             channel.setListener(mChannelListener);
-            // Create new event pulling thread
-            new Thread(new Runnable() {
+            mEventReader = new PrinterEventReader(channel, new PrinterEventReader.Listener() {
                 @Override
-                public void run() {
-                    while (true) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        try {
-                            channel.pullEvent();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            sendStatusUpdate(false);
-                            showError(e.getMessage(), mRestart);
-                            break;
-                        }
-                    }
+                public void onEventReaderFailed(IOException e) {
+                    Log.e(LOG_TAG, "Falha no canal de eventos: " + e.getMessage());
+                    showError(e.getMessage());
+                    connectionLost(e);
                 }
-            }).start();
-            mPrinter = new Printer(channel.getInputStream(), channel.getOutputStream());
+            }, "DatecsPrinter-events-" + mAddress);
+            mEventReader.start();
+            mPrinter = newPrinter(channel.getInputStream(), channel.getOutputStream());
         } else {
-            mPrinter = new Printer(mProtocolAdapter.getRawInputStream(), mProtocolAdapter.getRawOutputStream());
+            // no modo protocolo o ProtocolAdapter faz flush a cada pacote; só o modo raw é agrupado
+            OutputStream rawOutputStream = mProtocolAdapter.getRawOutputStream();
+            if (mChunkSize > 0) {
+                rawOutputStream = new CoalescingOutputStream(rawOutputStream, mChunkSize, mMaxWriteDelay, mMetrics);
+            }
+            mPrinter = newPrinter(mProtocolAdapter.getRawInputStream(), rawOutputStream);
         }
-        callbackContext.success();
+        mLastJob = null;
+        mConnectionLost = false;
+        startJobExecutor();
     }
 
     /**
-     * Alimenta papel à impressora (rola papel em branco)
+     * Encerra a captura do job no spool. O que o job escreveu sem Printer.flush() (trechos de
+     * texto, appendChunk...) ainda está no buffer interno do Printer: ele é esvaziado aqui, sem
+     * o preenchimento de flush(), para que esses bytes sejam registrados como um trecho deste
+     * job e não marcados como impressos junto com o próximo
      *
-     * @param linesQuantity
+     * @param spool
      */
-    public void feedPaper(int linesQuantity) {
-        if (linesQuantity < 0 || linesQuantity > 255) {
-            mCallbackContext.error(this.getErrorByCode(3));
-        }
+    private void endCapture(SpoolOutputStream spool) {
         try {
-            mPrinter.feedPaper(linesQuantity);
-            mPrinter.flush();
-            mCallbackContext.success();
-        } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(4, e));
+            OutputStream buffer = printerBuffer(mPrinter);
+            if (buffer != null) {
+                buffer.flush();
+            }
+            spool.endCapture();
+        } catch (IOException e) {
+            // o trecho ficou pendente no diário e é reenviado na próxima conexão
+            Log.e(LOG_TAG, "Falha ao enviar o fim do job: " + e.getMessage());
+            spool.abortCapture();
+            checkConnection(e);
         }
     }
 
     /**
-     * Print text expecting markup formatting tags and a defined charset
+     * Trata a queda da conexão se a falha de I/O derrubou o socket
      *
-     * @param text
-     * @param charset
+     * @param e
      */
-    public void printTaggedText(String text) {
-        try {
-            
-            StringBuffer textBuffer = new StringBuffer();
-            
-            textBuffer.append(text);
-            
-            mPrinter.reset();            
-            mPrinter.printTaggedText(textBuffer.toString());            
-            mPrinter.feedPaper(110);            
-            mPrinter.flush();
-            
-            mCallbackContext.success();
-        } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(5, e));
+    private void checkConnection(IOException e) {
+        PrinterSocketFactory.PrinterSocket socket = mSocket;
+        if (socket != null && !socket.isConnected()) {
+            connectionLostLater(e);
         }
     }
 
     /**
-     * Return what is the Printer current status
+     * Buffer interno do Printer (BufferedOutputStream de 2048 bytes), que o SDK só esvazia
+     * com o preenchimento de flush() ou nas consultas
+     *
+     * @param printer
+     * @return OutputStream, ou null se o campo não estiver acessível nesta versão do SDK
      */
-    public void getStatus() {
+    private static OutputStream printerBuffer(Printer printer) {
+        if (printer == null || sPrinterBuffer == null) {
+            return null;
+        }
         try {
-            int status = mPrinter.getStatus();
-            mCallbackContext.success(status);
-        } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(6, e));
+            return (OutputStream) sPrinterBuffer.get(printer);
+        } catch (IllegalAccessException e) {
+            return null;
         }
     }
 
-    /**
-     * Return Printer's head temperature
-     */
-    public void getTemperature() {
+    private static Field printerBufferField() {
         try {
-            int temperature = mPrinter.getTemperature();
-            mCallbackContext.success(temperature);
+            Field field = Printer.class.getDeclaredField("mBaseOutputStream");
+            field.setAccessible(true);
+            return field;
         } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(7, e));
+            Log.e(LOG_TAG, "Buffer do Printer inacessível: " + e.getMessage());
+            return null;
         }
     }
 
-    public void setBarcode(int align, boolean small, int scale, int hri, int height) {
-        try {
-            mPrinter.setBarcode(align, small, scale, hri, height);
-            mCallbackContext.success();
-        } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(10, e));
-        }
+    /**
+     * Cria o Printer sobre o spool e o contador de bytes, medindo o tempo de cada flush
+     *
+     * @param inputStream
+     * @param outputStream
+     * @return Printer
+     */
+    private Printer newPrinter(InputStream inputStream, OutputStream outputStream) {
+        mCountingStream = new CountingOutputStream(spool(outputStream));
+        return new Printer(inputStream, mCountingStream) {
+            @Override
+            public void flush() throws IOException {
+                long start = System.currentTimeMillis();
+                super.flush();
+                mMetrics.recordFlush(System.currentTimeMillis() - start);
+            }
+        };
     }
 
     /**
-     * Print a Barcode
+     * Com diário definido, passa o que a impressora envia pelo SpoolOutputStream
      *
-     * @param type
-     * @param data
+     * @param outputStream
+     * @return OutputStream
      */
-    public void printBarcode(int type, String data) {
-        try {
-            mPrinter.printBarcode(type, data);
-            mPrinter.flush();
-            mCallbackContext.success();
-        } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(8, e));
+    private OutputStream spool(OutputStream outputStream) {
+        if (mJournal == null) {
+            mSpoolStream = null;
+            return outputStream;
         }
+        mSpoolStream = new SpoolOutputStream(outputStream, mJournal);
+        return mSpoolStream;
     }
 
     /**
-     * Print a selftest page
+     * Enfileira o reenvio dos jobs que ficaram pendentes no diário, antes de qualquer outro job
      */
-    public void printSelfTest() {
-        try {
-            mPrinter.printSelfTest();
-            mPrinter.flush();
-            mCallbackContext.success();
-        } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(9, e));
+    private synchronized void replaySpool() {
+        final SpoolOutputStream spool = mSpoolStream;
+        if (spool == null || mJournal.getPendingCount() == 0) {
+            return;
         }
+        runOnJobThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int replayed = spool.replay();
+                    Log.i(LOG_TAG, "Spool: " + replayed + " trecho(s) reenviado(s)");
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Falha ao reenviar o spool: " + e.getMessage());
+                    connectionLostLater(e);
+                }
+            }
+        });
     }
 
-
     /**
-     * Print an image
+     * Executa uma tarefa interna na fila da impressora, sem callback e sem contar como uso
      *
-     * @param image String (BASE64 encoded image)
-     * @param width
-     * @param height
-     * @param align
+     * @param task
+     * @return false se não houver conexão
      */
-    public void printImage(String image, int width, int height, int align) {
+    private synchronized boolean runOnJobThread(final Runnable task) {
+        if (mJobExecutor == null) {
+            return false;
+        }
+        jobQueued();
         try {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inScaled = false;
-            byte[] decodedByte = Base64.decode(image, 0);
-            Bitmap bitmap = BitmapFactory.decodeByteArray(decodedByte, 0, decodedByte.length);
-            final int imgWidth = bitmap.getWidth();
-            final int imgHeight = bitmap.getHeight();
-            final int[] argb = new int[imgWidth * imgHeight];
-
-            bitmap.getPixels(argb, 0, imgWidth, 0, 0, imgWidth, imgHeight);
-            bitmap.recycle();
-
-            mPrinter.printImage(argb, width, height, align, true);
-            mPrinter.flush();
-            mCallbackContext.success();
-        } catch (Exception e) {
-            mCallbackContext.error(this.getErrorByCode(11, e));
+            // tarefas internas (spool, estado) passam na frente de todos os jobs do app
+            mJobExecutor.execute(new QueuedTask(JobPriority.HIGH, true) {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        jobFinished();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            jobFinished();
+            return false;
         }
     }
 
     /**
-     * Wrapper para criação de Threads
-     *
-     * @param job
-     * @param jobTitle
-     * @param jobName
+     * Cria a fila de impressão da conexão atual (um único consumidor por impressora), ordenada
+     * pela prioridade dos jobs
      */
-    private void runJob(final Runnable job, final String jobTitle, final String jobName) {
-        // Start the job from main thread
-        mCordova.getActivity().runOnUiThread(new Runnable() {
+    private synchronized void startJobExecutor() {
+        stopJobExecutor(false);
+        final String threadName = "DatecsPrinter-" + mAddress;
+        mJobQueue = new PriorityBlockingQueue<Runnable>();
+        mJobExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, mJobQueue, new ThreadFactory() {
             @Override
-            public void run() {
-                // Progress dialog available due job execution
-                final ProgressDialog dialog = new ProgressDialog(mCordova.getActivity());
-                dialog.setTitle(jobTitle);
-                dialog.setMessage(jobName);
-                dialog.setCancelable(false);
-                dialog.setCanceledOnTouchOutside(false);
-                dialog.show();
-
-                Thread t = new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            job.run();
-                        } finally {
-                            dialog.dismiss();
-                        }
-                    }
-                });
-                t.start();
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
             }
         });
     }
 
     /**
-     * Exibe Toast de erro
+     * Encerra a fila de impressão. Os jobs que não chegaram a executar são guardados para
+     * reenvio ou respondidos com erro
      *
-     * @param text
-     * @param resetConnection
+     * @param holdPendingJobs
      */
-    private void showError(final String text, boolean resetConnection) {
-        //we'l ignore toasts at the moment
-//        mCordova.getActivity().runOnUiThread(new Runnable() {
-//            @Override
-//            public void run() {
-//                Toast.makeText(mCordova.getActivity().getApplicationContext(), text, Toast.LENGTH_SHORT).show();
-//            }
-//        });
-        if (resetConnection) {
-            connect(mConnectCallbackContext);
+    private synchronized void stopJobExecutor(boolean holdPendingJobs) {
+        ExecutorService executor = mJobExecutor;
+        mJobExecutor = null;
+        mJobQueue = null;
+        if (executor == null) {
+            return;
+        }
+        List<Runnable> pending = executor.shutdownNow();
+        for (Runnable job : pending) {
+            jobFinished();
+            if (job instanceof PrintJob) {
+                if (holdPendingJobs) {
+                    hold((PrintJob) job);
+                } else {
+                    ((PrintJob) job).reject();
+                }
+            }
         }
     }
 
     /**
-     * Exibe mensagem Toast
+     * Enfileira um job na fila da impressora conectada. O método retorna imediatamente;
+     * o próprio job responde ao seu CallbackContext quando termina.
+     *
+     * @param job
+     */
+    private synchronized void enqueue(PrintJob job) {
+        mLastUsed = System.currentTimeMillis();
+        if (mJobExecutor == null || mPrinter == null) {
+            if (mReconnectSupervisor.isActive()) {
+                hold(job);
+            } else {
+                job.reject();
+            }
+            return;
+        }
+        jobQueued();
+        try {
+            mJobExecutor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobFinished();
+            job.reject();
+        }
+    }
+
+    /**
+     * Guarda um job enquanto a conexão está sendo restabelecida
+     *
+     * @param job
+     */
+    private synchronized void hold(PrintJob job) {
+        if (mHeldJobs.size() >= MAX_HELD_JOBS) {
+            job.reject();
+        } else {
+            mHeldJobs.add(job);
+        }
+    }
+
+    /**
+     * Reenvia, na ordem original, os jobs guardados durante a reconexão
+     */
+    private synchronized void replayHeldJobs() {
+        if (mHeldJobs.isEmpty()) {
+            return;
+        }
+        List<PrintJob> held = new ArrayList<PrintJob>(mHeldJobs);
+        mHeldJobs.clear();
+        mReconnectSupervisor.addReplayedJobs(held.size());
+        for (PrintJob job : held) {
+            enqueue(job);
+        }
+    }
+
+    /**
+     * Cancela um job com ID. Um job que ainda não começou é retirado da fila; um job dividido
+     * em trechos para antes do próximo trecho e reinicia a impressora; os demais não podem
+     * ser interrompidos
+     *
+     * @param jobId
+     * @return JOB_CANCELLED, JOB_STOPPING, JOB_RUNNING ou JOB_NOT_FOUND
+     */
+    public String cancelJob(String jobId) {
+        synchronized (this) {
+            for (Iterator<PrintJob> iterator = mHeldJobs.iterator(); iterator.hasNext(); ) {
+                PrintJob job = iterator.next();
+                if (jobId.equals(job.jobId)) {
+                    iterator.remove();
+                    job.cancelled = true;
+                    job.onCancelled();
+                    return JOB_CANCELLED;
+                }
+            }
+            if (mJobQueue != null) {
+                for (Runnable task : mJobQueue) {
+                    if (task instanceof PrintJob && jobId.equals(((PrintJob) task).jobId)) {
+                        PrintJob job = (PrintJob) task;
+                        job.cancelled = true;
+                        if (!job.started && mJobQueue.remove(job)) {
+                            jobFinished();
+                            job.onCancelled();
+                            return JOB_CANCELLED;
+                        }
+                        // já enviou trechos, ou acabou de sair da fila: para na próxima passagem
+                        return JOB_STOPPING;
+                    }
+                }
+            }
+        }
+        PrintJob running = mRunningJob;
+        if (running != null && jobId.equals(running.jobId)) {
+            running.cancelled = true;
+            return running.isChunked() ? JOB_STOPPING : JOB_RUNNING;
+        }
+        return JOB_NOT_FOUND;
+    }
+
+    private synchronized void rejectHeldJobs() {
+        List<PrintJob> held = new ArrayList<PrintJob>(mHeldJobs);
+        mHeldJobs.clear();
+        for (PrintJob job : held) {
+            job.reject();
+        }
+    }
+
+    private void jobQueued() {
+        if (mActiveJobs.incrementAndGet() == 1) {
+            PrinterEventReader reader = mEventReader;
+            if (reader != null) {
+                reader.setBusy(true);
+            }
+        }
+    }
+
+    private void jobFinished() {
+        if (mActiveJobs.decrementAndGet() == 0) {
+            PrinterEventReader reader = mEventReader;
+            if (reader != null) {
+                reader.setBusy(false);
+            }
+        }
+    }
+
+    /**
+     * Tarefa da fila de impressão, ordenada pela prioridade e depois pela ordem de chegada. As
+     * tarefas internas vêm antes de todas, inclusive dos jobs de prioridade alta
+     */
+    private abstract static class QueuedTask implements Runnable, Comparable<QueuedTask> {
+        final JobPriority priority;
+        final boolean internal;
+        final long sequence = sJobSequence.incrementAndGet();
+
+        QueuedTask(JobPriority priority) {
+            this(priority, false);
+        }
+
+        QueuedTask(JobPriority priority, boolean internal) {
+            this.priority = priority;
+            this.internal = internal;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            if (internal != other.internal) {
+                return internal ? -1 : 1;
+            }
+            if (priority != other.priority) {
+                return other.priority.ordinal() - priority.ordinal();
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Unidade de trabalho da fila de impressão, ligada ao CallbackContext da requisição que a criou.
+     * A prioridade e o ID vêm do JobCallbackContext, quando o app os informou
+     */
+    private abstract class PrintJob extends QueuedTask {
+        protected final CallbackContext callbackContext;
+        final String jobId;
+        final long queuedAt = System.currentTimeMillis();
+        volatile boolean started;
+        volatile boolean cancelled;
+        private boolean mRequeued;
+        private long mBytes;
+
+        PrintJob(CallbackContext callbackContext) {
+            super(callbackContext instanceof JobCallbackContext
+                    ? ((JobCallbackContext) callbackContext).getPriority()
+                    : JobPriority.NORMAL);
+            this.callbackContext = callbackContext;
+            this.jobId = callbackContext instanceof JobCallbackContext
+                    ? ((JobCallbackContext) callbackContext).getJobId()
+                    : null;
+        }
+
+        @Override
+        public final void run() {
+            if (mConnectionLost) {
+                jobFinished();
+                synchronized (DatecsSDKWrapper.this) {
+                    if (mAutoReconnect) {
+                        hold(this);
+                    } else {
+                        reject();
+                    }
+                }
+                return;
+            }
+            if (!started) {
+                started = true;
+                mMetrics.recordQueueWait(priority, System.currentTimeMillis() - queuedAt);
+            }
+            mRunningJob = this;
+            mRequeued = false;
+            SpoolOutputStream spool = isSpooled() ? mSpoolStream : null;
+            CountingOutputStream counter = mCountingStream;
+            long written = counter != null ? counter.getCount() : 0;
+            if (spool != null) {
+                spool.beginCapture();
+            }
+            try {
+                if (cancelled) {
+                    onCancelled();
+                } else {
+                    execute();
+                }
+            } finally {
+                if (spool != null) {
+                    endCapture(spool);
+                }
+                if (counter != null) {
+                    mBytes += counter.getCount() - written;
+                }
+                mLastJob = this;
+                mRunningJob = null;
+                if (!mRequeued) {
+                    if (counter != null) {
+                        mMetrics.recordJob(mBytes);
+                    }
+                    jobFinished();
+                }
+            }
+        }
+
+        protected abstract void execute();
+
+        /**
+         * Jobs divididos em trechos podem ser parados por cancelJob no meio
+         *
+         * @return boolean
+         */
+        boolean isChunked() {
+            return false;
+        }
+
+        /**
+         * Responde ao cancelamento; jobs em trechos também reiniciam a impressora
+         */
+        void onCancelled() {
+            mMetrics.recordCancelledJob();
+            callbackContext.error(getErrorByCode(35));
+        }
+
+        /**
+         * Devolve o job à fila para o próximo trecho. Jobs de prioridade maior que chegaram
+         * enquanto isso passam na frente; os de mesma prioridade continuam esperando este
+         */
+        void continueLater() {
+            mRequeued = true;
+            synchronized (DatecsSDKWrapper.this) {
+                if (mJobExecutor != null) {
+                    Runnable next = mJobQueue.peek();
+                    if (next instanceof QueuedTask && ((QueuedTask) next).compareTo(this) < 0) {
+                        mMetrics.recordPreemption();
+                    }
+                    try {
+                        mJobExecutor.execute(this);
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        Log.e(LOG_TAG, "Fila encerrada entre trechos do job");
+                    }
+                }
+                jobFinished();
+                if (mReconnectSupervisor.isActive()) {
+                    hold(this);
+                } else {
+                    reject();
+                }
+            }
+        }
+
+        /**
+         * Jobs que só consultam a impressora não são registrados no diário
+         *
+         * @return boolean
+         */
+        boolean isSpooled() {
+            return true;
+        }
+
+        void reject() {
+            callbackContext.error(getErrorByCode(12));
+        }
+
+        /**
+         * Responde com erro; se a falha de I/O derrubou o socket, trata a queda da conexão
+         *
+         * @param code
+         * @param e
+         */
+        void fail(int code, Exception e) {
+            SpoolOutputStream spool = mSpoolStream;
+            if (callbackContext instanceof JobCallbackContext && spool != null && spool.isCapturePending()) {
+                // o spool reenvia o job; uma nova tentativa com o mesmo ID não deve imprimir de novo
+                ((JobCallbackContext) callbackContext).setSpooled(getErrorByCode(34, null, false));
+            }
+            callbackContext.error(getErrorByCode(code, e));
+            if (e instanceof IOException) {
+                checkConnection((IOException) e);
+            }
+        }
+    }
+
+    /**
+     * Alimenta papel à impressora (rola papel em branco)
+     *
+     * @param linesQuantity
+     * @param callbackContext
+     */
+    public void feedPaper(final int linesQuantity, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                if (linesQuantity < 0 || linesQuantity > 255) {
+                    callbackContext.error(getErrorByCode(3));
+                    return;
+                }
+                try {
+                    mPrinter.feedPaper(linesQuantity);
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(4, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Print text expecting markup formatting tags
+     *
+     * @param text
+     * @param callbackContext
+     */
+    public void printTaggedText(final String text, CallbackContext callbackContext) {
+        printTaggedText(text, null, -1, callbackContext);
+    }
+
+    /**
+     * Print text expecting markup formatting tags and a defined charset
+     *
+     * @param text
+     * @param charset CP860, ISO-8859-1... or null to let the SDK encode it
+     * @param codeTable printer code table selected before the text (ESC u), or -1 to keep the current one
+     * @param callbackContext
+     */
+    public void printTaggedText(final String text, String charset, final int codeTable, CallbackContext callbackContext) {
+        final Charset encoding;
+        try {
+            encoding = charset == null || charset.length() == 0 ? null : Charset.forName(charset);
+        } catch (Exception e) {
+            callbackContext.error(getErrorByCode(26, e));
+            return;
+        }
+        enqueue(new PrintJob(callbackContext) {
+            private int mOffset;
+            // estilo e alinhamento abertos pelos trechos anteriores, só nos jobs em trechos
+            private TextEncoder mEncoder;
+
+            @Override
+            boolean isChunked() {
+                return text.length() > TEXT_CHUNK_CHARS;
+            }
+
+            @Override
+            protected void execute() {
+                try {
+                    // no início, e de novo se outro job usou a impressora entre dois trechos
+                    boolean resumed = mOffset > 0 && mLastJob != this;
+                    if (mOffset == 0 || resumed) {
+                        mPrinter.reset();
+                        if (codeTable >= 0) {
+                            mPrinter.selectCodetable(codeTable);
+                        }
+                    }
+                    int end = chunkEnd(text, mOffset, TEXT_CHUNK_CHARS);
+                    if (mOffset == 0 && end == text.length()) {
+                        if (encoding == null) {
+                            mPrinter.printTaggedText(text);
+                        } else {
+                            write(textEncoder(encoding).clear().appendTagged(text));
+                        }
+                    } else {
+                        // os trechos seguintes continuam o estilo do anterior, como num só printTaggedText
+                        String chunk = text.substring(mOffset, end);
+                        if (mEncoder == null) {
+                            mEncoder = new TextEncoder(encoding != null ? encoding : Charset.defaultCharset());
+                            mEncoder.appendTagged(chunk);
+                        } else if (resumed) {
+                            mEncoder.clear().appendState().appendTags(chunk);
+                        } else {
+                            mEncoder.clear().appendTags(chunk);
+                        }
+                        write(mEncoder);
+                    }
+                    mOffset = end;
+                    if (mOffset < text.length()) {
+                        // sem flush: Printer.flush envia 1 KB de preenchimento a cada chamada
+                        continueLater();
+                        return;
+                    }
+                    mPrinter.feedPaper(110);
+                    mPrinter.flush();
+
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(5, e);
+                }
+            }
+
+            @Override
+            void onCancelled() {
+                // só quando já enviou trechos nesta conexão
+                if (mOffset > 0 && mRunningJob == this) {
+                    try {
+                        mPrinter.reset();
+                        mPrinter.feedPaper(110);
+                        mPrinter.flush();
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, "Falha ao reiniciar a impressora: " + e.getMessage());
+                    }
+                }
+                super.onCancelled();
+            }
+        });
+    }
+
+    /**
+     * Return what is the Printer current status
+     *
+     * @param callbackContext
+     */
+    public void getStatus(CallbackContext callbackContext) {
+        getStatus(false, callbackContext);
+    }
+
+    /**
+     * Return what is the Printer current status, from the status cache while it is fresh
+     *
+     * @param refresh read it from the printer even if the cached value is fresh
+     * @param callbackContext
+     */
+    public void getStatus(boolean refresh, CallbackContext callbackContext) {
+        Integer cached = refresh ? null : mHealth.getStatus();
+        if (cached != null && isConnected()) {
+            callbackContext.success(cached);
+            return;
+        }
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            boolean isSpooled() {
+                return false;
+            }
+
+            @Override
+            protected void execute() {
+                try {
+                    int status = mPrinter.getStatus();
+                    mHealth.setStatus(status);
+                    callbackContext.success(status);
+                } catch (Exception e) {
+                    mHealth.invalidate();
+                    fail(6, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Return Printer's head temperature
+     *
+     * @param callbackContext
+     */
+    public void getTemperature(CallbackContext callbackContext) {
+        getTemperature(false, callbackContext);
+    }
+
+    /**
+     * Return Printer's head temperature, from the status cache while it is fresh
+     *
+     * @param refresh read it from the printer even if the cached value is fresh
+     * @param callbackContext
+     */
+    public void getTemperature(boolean refresh, CallbackContext callbackContext) {
+        Integer cached = refresh ? null : mHealth.getTemperature();
+        if (cached != null && isConnected()) {
+            callbackContext.success(cached);
+            return;
+        }
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            boolean isSpooled() {
+                return false;
+            }
+
+            @Override
+            protected void execute() {
+                try {
+                    int temperature = mPrinter.getTemperature();
+                    mHealth.setTemperature(temperature);
+                    callbackContext.success(temperature);
+                } catch (Exception e) {
+                    mHealth.invalidate();
+                    fail(7, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Return status, temperature, paper, overheat and battery state in a single call
+     *
+     * @param refresh read status and temperature from the printer even if the cache is fresh
+     * @param callbackContext
+     */
+    public void getHealth(boolean refresh, CallbackContext callbackContext) {
+        if (!isConnected() || (!refresh && mHealth.isFresh())) {
+            sendHealth(callbackContext, false);
+            return;
+        }
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            boolean isSpooled() {
+                return false;
+            }
+
+            @Override
+            protected void execute() {
+                try {
+                    refreshHealth();
+                    sendHealth(callbackContext, true);
+                } catch (Exception e) {
+                    mHealth.invalidate();
+                    fail(30, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the status cache TTL and the background refresh interval
+     *
+     * @param ttl
+     * @param refreshInterval 0 disables the refresh
+     * @param callbackContext
+     */
+    public synchronized void configureHealth(long ttl, long refreshInterval, CallbackContext callbackContext) {
+        mHealth.setTtl(ttl);
+        if (mHealthRefresh != null) {
+            mHealthRefresh.cancel(false);
+            mHealthRefresh = null;
+        }
+        if (refreshInterval > 0) {
+            mHealthRefresh = healthScheduler().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (mActiveJobs.get() > 0 || !isConnected()) {
+                        return;
+                    }
+                    runOnJobThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                refreshHealth();
+                            } catch (IOException e) {
+                                mHealth.invalidate();
+                                Log.e(LOG_TAG, "Falha ao atualizar o estado: " + e.getMessage());
+                            }
+                        }
+                    });
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        }
+        callbackContext.success();
+    }
+
+    /**
+     * Lê status e temperatura da impressora; deve ser chamado na fila de impressão
+     *
+     * @throws IOException
+     */
+    private void refreshHealth() throws IOException {
+        Printer printer = mPrinter;
+        if (printer == null) {
+            throw new IOException("Printer not connected");
+        }
+        mHealth.setStatus(printer.getStatus());
+        mHealth.setTemperature(printer.getTemperature());
+    }
+
+    private void sendHealth(CallbackContext callbackContext, boolean refreshed) {
+        try {
+            JSONObject json = mHealth.toJSON();
+            json.put("connected", isConnected());
+            json.put("refreshed", refreshed);
+            callbackContext.success(json);
+        } catch (JSONException e) {
+            callbackContext.error(getErrorByCode(30, e));
+        }
+    }
+
+    /**
+     * Agenda as atualizações de estado de todas as impressoras, numa única thread
+     *
+     * @return ScheduledExecutorService
+     */
+    private static synchronized ScheduledExecutorService healthScheduler() {
+        if (sHealthScheduler == null) {
+            sHealthScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatecsPrinter-health");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sHealthScheduler;
+    }
+
+    public void setBarcode(final int align, final boolean small, final int scale, final int hri, final int height, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    mPrinter.setBarcode(align, small, scale, hri, height);
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(10, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Print a Barcode
+     *
+     * @param type
+     * @param data
+     * @param callbackContext
+     */
+    public void printBarcode(final int type, final String data, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    mPrinter.printBarcode(type, data);
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(8, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Print a QR code, with the printer command (GS Q) or rasterized by QRCodeEncoder
+     *
+     * @param data
+     * @param size module size in dots
+     * @param ecc 1 (L), 2 (M), 3 (Q) or 4 (H)
+     * @param align
+     * @param mode native, raster or auto (native only if enabled by setNativeQRCode)
+     * @param callbackContext
+     */
+    public void printQRCode(final String data, final int size, final int ecc, final int align, final String mode, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    byte[] bytes = data.getBytes();
+                    boolean useNative = "native".equals(mode) || (!"raster".equals(mode) && mNativeQRCode);
+                    if (useNative) {
+                        // mesmo comando de Printer.printQRCode, com o alinhamento informado
+                        byte[] command = new byte[10 + bytes.length];
+                        command[0] = 27;
+                        command[1] = 97;
+                        command[2] = (byte) align;
+                        command[3] = 29;
+                        command[4] = 81;
+                        command[5] = 6;
+                        command[6] = (byte) size;
+                        command[7] = (byte) ecc;
+                        command[8] = (byte) bytes.length;
+                        command[9] = (byte) (bytes.length >> 8);
+                        System.arraycopy(bytes, 0, command, 10, bytes.length);
+                        mPrinter.write(command);
+                    } else {
+                        MonochromeImage.Compression compression = mImageCompression;
+                        String key = ecc + "/" + size + "/" + align + "/" + compression.getName() + "/" + data;
+                        byte[] commands = mQRCodeCache.get(key);
+                        if (commands == null) {
+                            commands = QRCodeEncoder.encode(bytes, ecc).toImage(size).encode(align, compression);
+                            if (commands.length <= mQRCodeCache.getMaxBytes()) {
+                                mQRCodeCache.put(key, commands);
+                            }
+                        }
+                        mPrinter.write(commands);
+                    }
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(28, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Use the printer QR code command when printQRCode is called without a mode
+     *
+     * @param enabled
+     * @param callbackContext
+     */
+    public void setNativeQRCode(boolean enabled, CallbackContext callbackContext) {
+        mNativeQRCode = enabled;
+        callbackContext.success();
+    }
+
+    /**
+     * Print a selftest page
+     *
+     * @param callbackContext
+     */
+    public void printSelfTest(CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    mPrinter.printSelfTest();
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(9, e);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Print an image
+     *
+     * @param image String (BASE64 encoded image)
+     * @param width
+     * @param height
+     * @param align
+     * @param dithering threshold, ordered, floydSteinberg or null to let the SDK convert it
+     *                  (floydSteinberg when an image compression is set)
+     * @param callbackContext success with {bytes, rawBytes, saved} when an image compression is set
+     */
+    public void printImage(final String image, final int width, final int height, final int align, final String dithering, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    JSONObject stats = printImage(decodeImage(image), width, height, align, dithering);
+                    mPrinter.flush();
+                    sendImageResult(callbackContext, stats);
+                } catch (Exception e) {
+                    fail(11, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Envia a imagem sem fazer flush. Sem algoritmo nem compressão definidos a conversão fica
+     * por conta do SDK
+     *
+     * @param argb
+     * @param width
+     * @param height
+     * @param align
+     * @param dithering threshold, ordered, floydSteinberg ou null
+     * @return bytes enviados e economizados, ou null sem compressão
+     * @throws IOException
+     * @throws JSONException
+     */
+    private JSONObject printImage(int[] argb, int width, int height, int align, String dithering) throws IOException, JSONException {
+        boolean noDithering = dithering == null || dithering.length() == 0;
+        if (noDithering && mImageCompression == MonochromeImage.Compression.NONE) {
+            mPrinter.printImage(argb, width, height, align, true);
+            return null;
+        }
+        ImageDitherer ditherer = new ImageDitherer(noDithering
+                ? ImageDitherer.Algorithm.FLOYD_STEINBERG
+                : ImageDitherer.Algorithm.fromName(dithering));
+        return printMonochrome(ditherer.dither(argb, width, height), align);
+    }
+
+    /**
+     * Envia a imagem com a compressão configurada, sem fazer flush
+     *
+     * @param image
+     * @param align
+     * @return bytes enviados e economizados, ou null sem compressão
+     * @throws IOException
+     * @throws JSONException
+     */
+    private JSONObject printMonochrome(MonochromeImage image, int align) throws IOException, JSONException {
+        MonochromeImage.Compression compression = mImageCompression;
+        if (compression == MonochromeImage.Compression.NONE) {
+            image.print(mPrinter, align);
+            return null;
+        }
+        byte[] commands = image.encode(align, compression);
+        mPrinter.write(commands);
+        int rawBytes = image.getRasterLength();
+        mMetrics.recordImage(rawBytes, commands.length);
+        JSONObject stats = new JSONObject();
+        stats.put("bytes", commands.length);
+        stats.put("rawBytes", rawBytes);
+        stats.put("saved", rawBytes - commands.length);
+        return stats;
+    }
+
+    private static void sendImageResult(CallbackContext callbackContext, JSONObject stats) {
+        if (stats == null) {
+            callbackContext.success();
+        } else {
+            callbackContext.success(stats);
+        }
+    }
+
+    /**
+     * Set how this printer receives images
+     *
+     * @param mode none, compact or rle
+     * @param callbackContext
+     */
+    public void setImageCompression(String mode, CallbackContext callbackContext) {
+        try {
+            mImageCompression = MonochromeImage.Compression.fromName(mode);
+            callbackContext.success();
+        } catch (IllegalArgumentException e) {
+            callbackContext.error(getErrorByCode(31, e));
+        }
+    }
+
+    /**
+     * Print an image already packed as 1 bit per pixel, skipping Bitmap and ARGB conversion
+     *
+     * @param data packed rows, (width + 7) / 8 bytes per row, most significant bit first, 1 = black
+     * @param width
+     * @param height
+     * @param align
+     * @param callbackContext success with {bytes, rawBytes, saved} when an image compression is set
+     */
+    public void printImageBinary(final byte[] data, final int width, final int height, final int align, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    JSONObject stats = printMonochrome(new MonochromeImage(width, height, data), align);
+                    mPrinter.flush();
+                    sendImageResult(callbackContext, stats);
+                } catch (Exception e) {
+                    fail(11, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Converte a imagem uma única vez e guarda os comandos de impressão no cache, para
+     * serem enviados depois por printLogo
+     *
+     * @param id
+     * @param image String (BASE64 encoded image)
+     * @param width
+     * @param height
+     * @param align
+     * @param dithering threshold, ordered or floydSteinberg (default)
+     * @param compression none (default), compact or rle; see setImageCompression
+     * @param callbackContext
+     */
+    public void cacheImage(final String id, final String image, final int width, final int height, final int align, final String dithering, final String compression, final CallbackContext callbackContext) {
+        mCordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ImageDitherer.Algorithm algorithm = dithering == null || dithering.length() == 0
+                            ? ImageDitherer.Algorithm.FLOYD_STEINBERG
+                            : ImageDitherer.Algorithm.fromName(dithering);
+                    MonochromeImage monochrome = new ImageDitherer(algorithm).dither(decodeImage(image), width, height);
+                    byte[] commands = compression == null || compression.length() == 0
+                            ? monochrome.encode(align)
+                            : monochrome.encode(align, MonochromeImage.Compression.fromName(compression));
+                    mImageCache.put(id, commands);
+                    callbackContext.success(commands.length);
+                } catch (Exception e) {
+                    callbackContext.error(getErrorByCode(17, e));
+                }
+            }
+        });
+    }
+
+    /**
+     * Encoder do charset, criado na primeira vez; usado apenas na thread de jobs
+     *
+     * @param charset
+     * @return TextEncoder
+     */
+    private TextEncoder textEncoder(Charset charset) {
+        TextEncoder encoder = mTextEncoders.get(charset.name());
+        if (encoder == null) {
+            encoder = new TextEncoder(charset);
+            mTextEncoders.put(charset.name(), encoder);
+        }
+        return encoder;
+    }
+
+    /**
+     * Send bytes already encoded by the app straight to the printer
+     *
+     * @param data
+     * @param callbackContext
+     */
+    public void printBytes(final byte[] data, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    mPrinter.write(data);
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(27, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compile tagged text with {{field}} placeholders once, for printTemplate
+     *
+     * @param id
+     * @param template
+     * @param charset charset of the text and the values, or null for the default
+     * @param callbackContext
+     */
+    public void registerTemplate(String id, String template, String charset, CallbackContext callbackContext) {
+        try {
+            PrintTemplate compiled = charset == null || charset.length() == 0
+                    ? PrintTemplate.compile(template)
+                    : PrintTemplate.compile(template, Charset.forName(charset));
+            mTemplates.put(id, compiled);
+            JSONArray fields = new JSONArray();
+            for (String field : compiled.getFields()) {
+                fields.put(field);
+            }
+            callbackContext.success(fields);
+        } catch (Exception e) {
+            callbackContext.error(getErrorByCode(24, e));
+        }
+    }
+
+    /**
+     * Print a registered template filled with data, like printText would print the same text
+     *
+     * @param id
+     * @param data
+     * @param callbackContext
+     */
+    public void printTemplate(final String id, final JSONObject data, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    PrintTemplate template = mTemplates.get(id);
+                    if (template == null) {
+                        callbackContext.error(getErrorByCode(23));
+                        return;
+                    }
+                    mPrinter.reset();
+                    mPrinter.write(template.render(data));
+                    mPrinter.feedPaper(110);
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(25, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Print an image previously stored by cacheImage
+     *
+     * @param id
+     * @param callbackContext
+     */
+    public void printLogo(final String id, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    if (!printCachedImage(id)) {
+                        callbackContext.error(getErrorByCode(16));
+                        return;
+                    }
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(11, e);
+                }
+            }
+        });
+    }
+
+    private boolean printCachedImage(String id) throws IOException {
+        byte[] commands = mImageCache.get(id);
+        if (commands == null) {
+            return false;
+        }
+        mPrinter.write(commands);
+        return true;
+    }
+
+    /**
+     * Define o limite de memória do cache de imagens
+     *
+     * @param maxBytes
+     * @param callbackContext
+     */
+    public void setImageCacheLimit(int maxBytes, CallbackContext callbackContext) {
+        mImageCache.setMaxBytes(maxBytes);
+        callbackContext.success();
+    }
+
+    /**
+     * Return image cache usage and hit/miss counters
+     *
+     * @param callbackContext
+     */
+    public void getImageCacheStats(CallbackContext callbackContext) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("hits", mImageCache.getHits());
+            json.put("misses", mImageCache.getMisses());
+            json.put("entries", mImageCache.size());
+            json.put("bytes", mImageCache.getBytes());
+            json.put("maxBytes", mImageCache.getMaxBytes());
+            JSONObject qrCodes = new JSONObject();
+            qrCodes.put("hits", mQRCodeCache.getHits());
+            qrCodes.put("misses", mQRCodeCache.getMisses());
+            qrCodes.put("entries", mQRCodeCache.size());
+            qrCodes.put("bytes", mQRCodeCache.getBytes());
+            json.put("qrCodes", qrCodes);
+            callbackContext.success(json);
+        } catch (JSONException e) {
+            callbackContext.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Inicia um documento enviado em trechos (beginDocument / appendChunk / endDocument)
+     *
+     * @param callbackContext
+     */
+    public void beginDocument(CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    mDocumentOpen = true;
+                    mDocumentCarry = "";
+                    mPrinter.reset();
+                    // mesmo reset de estilo de printTaggedText; os trechos seguintes continuam o estilo
+                    mDocumentEncoder = new TextEncoder();
+                    write(mDocumentEncoder.appendTagged(""));
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(18, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Print the next chunk of tagged text of the open document
+     *
+     * @param text
+     * @param callbackContext
+     */
+    public void appendChunk(final String text, CallbackContext callbackContext) {
+        final int length = text.length();
+        if (length > MAX_PENDING_DOCUMENT_CHARS) {
+            callbackContext.error(getErrorByCode(36));
+            return;
+        }
+        int pending = mPendingDocumentChars.getAndAdd(length);
+        if (pending > 0 && pending + length > MAX_PENDING_DOCUMENT_CHARS) {
+            mPendingDocumentChars.addAndGet(-length);
+            callbackContext.error(getErrorByCode(20));
+            return;
+        }
+        enqueue(new PrintJob(callbackContext) {
+            // a reserva no buffer do documento é devolvida uma vez, qualquer que seja o fim do job
+            private final AtomicBoolean mReserved = new AtomicBoolean(true);
+
+            @Override
+            protected void execute() {
+                try {
+                    if (!mDocumentOpen) {
+                        callbackContext.error(getErrorByCode(19));
+                        return;
+                    }
+                    String chunk = mDocumentCarry + text;
+                    int end = completeTagsEnd(chunk);
+                    mDocumentCarry = chunk.substring(end);
+                    if (end > 0) {
+                        write(mDocumentEncoder.clear().appendTags(chunk.substring(0, end)));
+                    }
+                    callbackContext.success(mPendingDocumentChars.get() - length);
+                } catch (Exception e) {
+                    fail(18, e);
+                } finally {
+                    releaseReservation();
+                }
+            }
+
+            @Override
+            void reject() {
+                releaseReservation();
+                super.reject();
+            }
+
+            @Override
+            void onCancelled() {
+                releaseReservation();
+                super.onCancelled();
+            }
+
+            private void releaseReservation() {
+                if (mReserved.getAndSet(false)) {
+                    mPendingDocumentChars.addAndGet(-length);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finaliza o documento aberto, alimenta o papel e faz o flush
+     *
+     * @param callbackContext
+     */
+    public void endDocument(CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    if (!mDocumentOpen) {
+                        callbackContext.error(getErrorByCode(19));
+                        return;
+                    }
+                    mDocumentOpen = false;
+                    if (mDocumentCarry.length() > 0) {
+                        write(mDocumentEncoder.clear().appendTags(mDocumentCarry));
+                        mDocumentCarry = "";
+                    }
+                    mDocumentEncoder = null;
+                    mPrinter.feedPaper(110);
+                    mPrinter.flush();
+                    callbackContext.success();
+                } catch (Exception e) {
+                    fail(18, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Envia o conteúdo do encoder à impressora
+     *
+     * @param encoder
+     * @throws IOException
+     */
+    private void write(TextEncoder encoder) throws IOException {
+        mPrinter.write(encoder.array(), 0, encoder.length());
+    }
+
+    /**
+     * Fim do próximo trecho de um texto longo: a última quebra de linha ({br} ou \n) em até max
+     * caracteres a partir de start ou, sem quebra, um ponto que não corte uma tag
+     *
+     * @param text
+     * @param start
+     * @param max
+     * @return int
+     */
+    private static int chunkEnd(String text, int start, int max) {
+        int limit = start + max;
+        if (limit >= text.length()) {
+            return text.length();
+        }
+        int br = text.lastIndexOf("{br}", limit - 4);
+        int newline = text.lastIndexOf('\n', limit - 1);
+        int end = Math.max(br >= start ? br + 4 : -1, newline >= start ? newline + 1 : -1);
+        if (end > start) {
+            return end;
+        }
+        end = start + completeTagsEnd(text.substring(start, limit));
+        return end > start ? end : limit;
+    }
+
+    /**
+     * Posição até onde o texto pode ser enviado sem cortar uma tag ao meio
+     *
+     * @param text
+     * @return int
+     */
+    private static int completeTagsEnd(String text) {
+        int open = text.lastIndexOf('{');
+        if (open >= 0 && text.indexOf('}', open) < 0 && text.length() - open < MAX_TAG_LENGTH) {
+            return open;
+        }
+        return text.length();
+    }
+
+    /**
+     * Keep the callback open and push printer events (paper, overheat, lowBattery, connection) to it
+     *
+     * @param callbackContext
+     */
+    public void subscribeEvents(CallbackContext callbackContext) {
+        mEventDispatcher.subscribe(callbackContext);
+    }
+
+    /**
+     * Close every callback opened by subscribeEvents
+     *
+     * @param callbackContext
+     */
+    public void unsubscribeEvents(CallbackContext callbackContext) {
+        mEventDispatcher.unsubscribeAll();
+        callbackContext.success();
+    }
+
+    /**
+     * Configure automatic reconnection after the link drops
+     *
+     * @param enabled
+     * @param maxAttempts
+     * @param baseDelay first backoff delay, in milliseconds
+     * @param maxDelay
+     * @param callbackContext
+     */
+    public void setAutoReconnect(boolean enabled, int maxAttempts, long baseDelay, long maxDelay, CallbackContext callbackContext) {
+        synchronized (this) {
+            mAutoReconnect = enabled;
+            if (!enabled) {
+                mReconnectSupervisor.cancel();
+                rejectHeldJobs();
+            }
+        }
+        mReconnectSupervisor.configure(maxAttempts, baseDelay, maxDelay);
+        callbackContext.success();
+    }
+
+    /**
+     * Return reconnection metrics
+     *
+     * @param callbackContext
+     */
+    public void getReconnectStats(CallbackContext callbackContext) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("reconnecting", mReconnectSupervisor.isActive());
+            json.put("attempts", mReconnectSupervisor.getTotalAttempts());
+            json.put("recoveries", mReconnectSupervisor.getRecoveries());
+            json.put("failures", mReconnectSupervisor.getFailures());
+            json.put("lastRecoveryTime", mReconnectSupervisor.getLastRecoveryTime());
+            json.put("replayedJobs", mReconnectSupervisor.getReplayedJobs());
+            synchronized (this) {
+                json.put("heldJobs", mHeldJobs.size());
+            }
+            callbackContext.success(json);
+        } catch (JSONException e) {
+            callbackContext.error(getErrorByCode(21, e));
+        }
+    }
+
+    /**
+     * Set how raw mode writes to the printer socket are grouped, from the next connection on
+     *
+     * @param chunkSize bytes per socket write, at least the 2048 byte Printer buffer; 0 writes as the SDK does
+     * @param maxDelay ms that data written without a flush may wait to be sent; 0 waits for the flush
+     * @param callbackContext
+     */
+    public synchronized void configureOutput(int chunkSize, long maxDelay, CallbackContext callbackContext) {
+        mChunkSize = Math.max(0, chunkSize);
+        mMaxWriteDelay = Math.max(0, maxDelay);
+        callbackContext.success();
+    }
+
+    /**
+     * Return how many print jobs are waiting in the spool journal and its disk usage
+     *
+     * @param callbackContext
+     */
+    public synchronized void getSpoolStats(CallbackContext callbackContext) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("enabled", mJournal != null);
+            if (mJournal != null) {
+                json.put("pending", mJournal.getPendingCount());
+                json.put("bytes", mJournal.length());
+                json.put("appended", mJournal.getAppended());
+                json.put("syncs", mJournal.getSyncs());
+                json.put("compactions", mJournal.getCompactions());
+                json.put("recovered", mJournal.getRecovered());
+                SpoolOutputStream spool = mSpoolStream;
+                json.put("replayed", spool != null ? spool.getReplayed() : 0);
+            }
+            callbackContext.success(json);
+        } catch (Exception e) {
+            callbackContext.error(getErrorByCode(29, e));
+        }
+    }
+
+    /**
+     * Discard the print jobs waiting in the spool journal, so they are not printed again
+     *
+     * @param callbackContext
+     */
+    public synchronized void clearSpool(CallbackContext callbackContext) {
+        try {
+            int pending = 0;
+            if (mJournal != null) {
+                pending = mJournal.getPendingCount();
+                mJournal.clear();
+            }
+            callbackContext.success(pending);
+        } catch (IOException e) {
+            callbackContext.error(getErrorByCode(29, e));
+        }
+    }
+
+    /**
+     * Print a list of operations with a single flush and a single callback
+     *
+     * @param operations objects with an "op" field: text, feed, setBarcode, barcode, image, logo or reset
+     * @param callbackContext
+     */
+    public void printBatch(final JSONArray operations, CallbackContext callbackContext) {
+        enqueue(new PrintJob(callbackContext) {
+            @Override
+            protected void execute() {
+                try {
+                    for (int i = 0; i < operations.length(); i++) {
+                        printOperation(operations.getJSONObject(i));
+                    }
+                    mPrinter.flush();
+                    callbackContext.success(operations.length());
+                } catch (Exception e) {
+                    fail(15, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Executa uma operação do lote sem fazer flush
+     *
+     * @param operation
+     * @throws Exception
+     */
+    private void printOperation(JSONObject operation) throws Exception {
+        String op = operation.getString("op");
+        if ("text".equals(op)) {
+            mPrinter.printTaggedText(operation.getString("text"));
+        } else if ("feed".equals(op)) {
+            mPrinter.feedPaper(operation.getInt("lines"));
+        } else if ("setBarcode".equals(op)) {
+            mPrinter.setBarcode(operation.getInt("align"), operation.getBoolean("small"), operation.getInt("scale"),
+                    operation.getInt("hri"), operation.getInt("height"));
+        } else if ("barcode".equals(op)) {
+            mPrinter.printBarcode(operation.getInt("type"), operation.getString("data"));
+        } else if ("image".equals(op)) {
+            printImage(decodeImage(operation.getString("image")), operation.getInt("width"),
+                    operation.getInt("height"), operation.getInt("align"), operation.optString("dither", null));
+        } else if ("logo".equals(op)) {
+            if (!printCachedImage(operation.getString("id"))) {
+                throw new IllegalArgumentException(errorCode.get(16) + ": " + operation.getString("id"));
+            }
+        } else if ("reset".equals(op)) {
+            mPrinter.reset();
+        } else {
+            throw new IllegalArgumentException("Operação desconhecida: " + op);
+        }
+    }
+
+    /**
+     * Decodifica uma imagem BASE64 em pixels ARGB
+     *
+     * @param image String (BASE64 encoded image)
+     * @return int[]
+     */
+    private int[] decodeImage(String image) {
+        byte[] decodedByte = Base64.decode(image, 0);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(decodedByte, 0, decodedByte.length);
+        final int imgWidth = bitmap.getWidth();
+        final int imgHeight = bitmap.getHeight();
+        final int[] argb = new int[imgWidth * imgHeight];
+
+        bitmap.getPixels(argb, 0, imgWidth, 0, 0, imgWidth, imgHeight);
+        bitmap.recycle();
+        return argb;
+    }
+
+    /**
+     * Wrapper para criação de Threads
+     *
+     * @param job
+     * @param jobTitle
+     * @param jobName
+     */
+    private void runJob(final Runnable job, final String jobTitle, final String jobName) {
+        // Start the job from main thread
+        mCordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // Progress dialog available due job execution
+                final ProgressDialog dialog = new ProgressDialog(mCordova.getActivity());
+                dialog.setTitle(jobTitle);
+                dialog.setMessage(jobName);
+                dialog.setCancelable(false);
+                dialog.setCanceledOnTouchOutside(false);
+                dialog.show();
+
+                mCordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            job.run();
+                        } finally {
+                            mCordova.getActivity().runOnUiThread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    dialog.dismiss();
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Exibe Toast de erro
+     *
+     * @param text
+     */
+    private void showError(final String text) {
+        //we'l ignore toasts at the moment
+//        mCordova.getActivity().runOnUiThread(new Runnable() {
+//            @Override
+//            public void run() {
+//                Toast.makeText(mCordova.getActivity().getApplicationContext(), text, Toast.LENGTH_SHORT).show();
+//            }
+//        });
+    }
+
+    /**
+     * Exibe mensagem Toast
      *
      * @param text
      */
@@ -567,6 +2382,8 @@ public class DatecsSDKWrapper {
      * @param connection status
      */
     private void sendStatusUpdate(boolean isConnected) {
+        mEventDispatcher.post(mAddress, PrinterEventDispatcher.CONNECTION, isConnected);
+
         final Intent intent = new Intent("DatecsPrinter.connectionStatus");
 
         Bundle b = new Bundle();
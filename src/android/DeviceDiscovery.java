@@ -0,0 +1,292 @@
+package com.giorgiofellipe.datecsprinter;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Busca de impressoras com cache dos dispositivos já vistos
+ */
+public class DeviceDiscovery {
+    public static final long DEFAULT_TIMEOUT = 12000;
+    public static final long DEFAULT_MAX_AGE = 10 * 60 * 1000;
+    public static final String DEFAULT_NAME_PATTERN = "(?i)^(DPP|PP|CMP|EP|DATECS).*";
+    private static final int MAX_CACHED_DEVICES = 64;
+    private static final String LOG_TAG = "BluetoothPrinter";
+    private static final int IMAGING_CLASS = 0x0600;
+
+    private static ScheduledExecutorService sScheduler;
+
+    /**
+     * Quais dispositivos uma busca devolve
+     */
+    public static class Filter {
+        private final Pattern mNamePattern;
+        private final boolean mIncludeUnpaired;
+        private final boolean mAll;
+
+        /**
+         * @param namePattern expressão regular do nome; null usa DEFAULT_NAME_PATTERN
+         * @param includeUnpaired
+         * @param all aceita qualquer dispositivo
+         */
+        public Filter(String namePattern, boolean includeUnpaired, boolean all) {
+            mNamePattern = Pattern.compile(namePattern != null ? namePattern : DEFAULT_NAME_PATTERN);
+            mIncludeUnpaired = includeUnpaired;
+            mAll = all;
+        }
+
+        public boolean matches(DiscoveredDevice device) {
+            if (device.isBonded()) {
+                return true;
+            }
+            if (!mIncludeUnpaired) {
+                return false;
+            }
+            if (mAll || device.getMajorDeviceClass() == IMAGING_CLASS) {
+                return true;
+            }
+            return device.getName() != null && mNamePattern.matcher(device.getName()).matches();
+        }
+    }
+
+    /**
+     * Callback inscrito na busca em andamento, com os dispositivos que já recebeu
+     */
+    private static class Subscriber {
+        final CallbackContext callbackContext;
+        final Filter filter;
+        final Map<String, Boolean> sent = new LinkedHashMap<String, Boolean>();
+
+        Subscriber(CallbackContext callbackContext, Filter filter) {
+            this.callbackContext = callbackContext;
+            this.filter = filter;
+        }
+    }
+
+    private final LinkedHashMap<String, DiscoveredDevice> mCache = new LinkedHashMap<String, DiscoveredDevice>();
+    private final List<Subscriber> mSubscribers = new ArrayList<Subscriber>();
+    private DiscoveryAdapter mAdapter;
+    private int mGeneration;
+    private boolean mDiscovering;
+    private ScheduledFuture<?> mTimeout;
+
+    public synchronized void setAdapter(DiscoveryAdapter adapter) {
+        if (mDiscovering) {
+            stop();
+        }
+        mAdapter = adapter;
+    }
+
+    public synchronized DiscoveryAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    public synchronized boolean isDiscovering() {
+        return mDiscovering;
+    }
+
+    /**
+     * Dispositivos pareados, registrados no cache
+     *
+     * @return List
+     */
+    public synchronized List<DiscoveredDevice> getBondedDevices() {
+        List<DiscoveredDevice> devices = new ArrayList<DiscoveredDevice>();
+        if (mAdapter == null) {
+            return devices;
+        }
+        for (DiscoveredDevice device : mAdapter.getBondedDevices()) {
+            devices.add(remember(device));
+        }
+        return devices;
+    }
+
+    /**
+     * Envia os dispositivos conhecidos e inicia a busca, ou se junta à que está em andamento
+     *
+     * @param filter
+     * @param timeout ms até a busca ser encerrada
+     * @param maxAge idade máxima, em ms, de um dispositivo não pareado enviado do cache
+     * @param callbackContext
+     * @throws IOException se a busca não pôde ser iniciada
+     */
+    public synchronized void discover(Filter filter, long timeout, long maxAge, CallbackContext callbackContext) throws IOException {
+        if (mAdapter == null) {
+            throw new IOException("Bluetooth adapter not available");
+        }
+        Subscriber subscriber = new Subscriber(callbackContext, filter);
+        getBondedDevices();
+        long oldest = System.currentTimeMillis() - maxAge;
+        for (DiscoveredDevice device : mCache.values()) {
+            if (device.isBonded() || device.getLastSeen() >= oldest) {
+                offer(subscriber, device, true);
+            }
+        }
+        mSubscribers.add(subscriber);
+        if (!mDiscovering) {
+            // o adaptador pode entregar resultados antes de startDiscovery retornar
+            mDiscovering = true;
+            final int generation = ++mGeneration;
+            boolean started = mAdapter.startDiscovery(new DiscoveryAdapter.Listener() {
+                @Override
+                public void onDeviceFound(DiscoveredDevice device) {
+                    DeviceDiscovery.this.onDeviceFound(generation, device);
+                }
+
+                @Override
+                public void onDiscoveryFinished() {
+                    DeviceDiscovery.this.onDiscoveryFinished(generation);
+                }
+            });
+            if (!started) {
+                mDiscovering = false;
+                mSubscribers.remove(subscriber);
+                throw new IOException("Bluetooth discovery could not be started");
+            }
+            if (mDiscovering) {
+                mTimeout = scheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        stop();
+                    }
+                }, Math.max(0, timeout), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Encerra a busca em andamento, enviando a lista final aos callbacks inscritos
+     */
+    public synchronized void stop() {
+        if (!mDiscovering) {
+            return;
+        }
+        mAdapter.cancelDiscovery();
+        finish();
+    }
+
+    public synchronized void clearCache() {
+        mCache.clear();
+    }
+
+    private synchronized void onDeviceFound(int generation, DiscoveredDevice device) {
+        if (generation != mGeneration || !mDiscovering) {
+            return;
+        }
+        DiscoveredDevice merged = remember(device);
+        for (Subscriber subscriber : mSubscribers) {
+            offer(subscriber, merged, false);
+        }
+    }
+
+    private synchronized void onDiscoveryFinished(int generation) {
+        if (generation == mGeneration && mDiscovering) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        mDiscovering = false;
+        if (mTimeout != null) {
+            mTimeout.cancel(false);
+            mTimeout = null;
+        }
+        for (Subscriber subscriber : mSubscribers) {
+            try {
+                JSONArray devices = new JSONArray();
+                for (Map.Entry<String, Boolean> entry : subscriber.sent.entrySet()) {
+                    DiscoveredDevice device = mCache.get(entry.getKey());
+                    if (device != null) {
+                        devices.put(device.toJSON(entry.getValue()));
+                    }
+                }
+                JSONObject json = new JSONObject();
+                json.put("event", "finished");
+                json.put("devices", devices);
+                subscriber.callbackContext.success(json);
+            } catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage());
+                subscriber.callbackContext.error(e.getMessage());
+            }
+        }
+        mSubscribers.clear();
+    }
+
+    /**
+     * Envia o dispositivo ao callback se passar pelo filtro. Um dispositivo enviado do cache é
+     * enviado de novo quando a busca o encontra, com o sinal atualizado
+     */
+    private void offer(Subscriber subscriber, DiscoveredDevice device, boolean cached) {
+        if (!subscriber.filter.matches(device)) {
+            return;
+        }
+        Boolean previous = subscriber.sent.get(device.getAddress());
+        if (previous != null && (cached || !previous)) {
+            return;
+        }
+        subscriber.sent.put(device.getAddress(), cached);
+        try {
+            JSONObject json = new JSONObject();
+            json.put("event", "device");
+            json.put("device", device.toJSON(cached));
+            PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+            result.setKeepCallback(true);
+            subscriber.callbackContext.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage());
+        }
+    }
+
+    /**
+     * Registra o dispositivo no cache, no fim da ordem, descartando o visto há mais tempo
+     * quando o cache está cheio
+     */
+    private DiscoveredDevice remember(DiscoveredDevice device) {
+        DiscoveredDevice merged = device.merge(mCache.remove(device.getAddress()));
+        mCache.put(merged.getAddress(), merged);
+        if (mCache.size() > MAX_CACHED_DEVICES) {
+            Iterator<DiscoveredDevice> iterator = mCache.values().iterator();
+            DiscoveredDevice oldest = null;
+            while (iterator.hasNext()) {
+                DiscoveredDevice candidate = iterator.next();
+                if (oldest == null || candidate.getLastSeen() < oldest.getLastSeen()) {
+                    oldest = candidate;
+                }
+            }
+            mCache.remove(oldest.getAddress());
+        }
+        return merged;
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (sScheduler == null) {
+            sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatecsPrinter-discovery");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sScheduler;
+    }
+}
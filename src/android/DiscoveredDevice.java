@@ -0,0 +1,114 @@
+package com.giorgiofellipe.datecsprinter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Dispositivo Bluetooth visto por uma busca ou pareado com o aparelho
+ */
+public class DiscoveredDevice {
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int NO_CLASS = -1;
+    public static final int NO_RSSI = Short.MIN_VALUE;
+    public static final int MAJOR_CLASS_MASK = 0x1F00;
+
+    private final String mAddress;
+    private final String mName;
+    private final int mType;
+    private final int mDeviceClass;
+    private final int mRssi;
+    private final boolean mBonded;
+    private final long mLastSeen;
+
+    /**
+     * @param address
+     * @param name null enquanto o nome não foi resolvido
+     * @param type BluetoothDevice.getType, ou TYPE_UNKNOWN
+     * @param deviceClass BluetoothClass.getDeviceClass, ou NO_CLASS
+     * @param rssi em dBm, ou NO_RSSI
+     * @param bonded
+     * @param lastSeen momento em que uma busca encontrou o dispositivo, ou 0
+     */
+    public DiscoveredDevice(String address, String name, int type, int deviceClass, int rssi, boolean bonded, long lastSeen) {
+        mAddress = address;
+        mName = name;
+        mType = type;
+        mDeviceClass = deviceClass;
+        mRssi = rssi;
+        mBonded = bonded;
+        mLastSeen = lastSeen;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public int getDeviceClass() {
+        return mDeviceClass;
+    }
+
+    /**
+     * @return classe principal (BluetoothClass.Device.Major), ou NO_CLASS
+     */
+    public int getMajorDeviceClass() {
+        return mDeviceClass == NO_CLASS ? NO_CLASS : mDeviceClass & MAJOR_CLASS_MASK;
+    }
+
+    public int getRssi() {
+        return mRssi;
+    }
+
+    public boolean isBonded() {
+        return mBonded;
+    }
+
+    public long getLastSeen() {
+        return mLastSeen;
+    }
+
+    /**
+     * Combina este registro, mais novo, com o anterior do mesmo dispositivo
+     *
+     * @param previous
+     * @return DiscoveredDevice
+     */
+    public DiscoveredDevice merge(DiscoveredDevice previous) {
+        if (previous == null) {
+            return this;
+        }
+        boolean seenNow = mLastSeen >= previous.mLastSeen;
+        return new DiscoveredDevice(mAddress,
+                mName != null ? mName : previous.mName,
+                mType != TYPE_UNKNOWN ? mType : previous.mType,
+                mDeviceClass != NO_CLASS ? mDeviceClass : previous.mDeviceClass,
+                mRssi != NO_RSSI && seenNow ? mRssi : previous.mRssi,
+                mBonded,
+                Math.max(mLastSeen, previous.mLastSeen));
+    }
+
+    /**
+     * @param cached true quando o dispositivo vem do cache e não da busca em andamento
+     * @return JSONObject
+     * @throws JSONException
+     */
+    public JSONObject toJSON(boolean cached) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("address", mAddress);
+        json.put("name", mName != null ? mName : JSONObject.NULL);
+        json.put("type", mType);
+        json.put("deviceClass", mDeviceClass);
+        json.put("rssi", mRssi != NO_RSSI ? (Object) mRssi : JSONObject.NULL);
+        json.put("bonded", mBonded);
+        json.put("lastSeen", mLastSeen);
+        json.put("cached", cached);
+        return json;
+    }
+}
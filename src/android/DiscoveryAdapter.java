@@ -0,0 +1,45 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.List;
+
+/**
+ * Acesso ao adaptador Bluetooth usado pela busca de dispositivos
+ */
+public interface DiscoveryAdapter {
+    /**
+     * Recebe os resultados de uma busca
+     */
+    interface Listener {
+        void onDeviceFound(DiscoveredDevice device);
+
+        void onDiscoveryFinished();
+    }
+
+    boolean isAvailable();
+
+    boolean isEnabled();
+
+    /**
+     * Pede ao usuário para ligar o Bluetooth; não espera a resposta
+     */
+    void requestEnable();
+
+    /**
+     * @return dispositivos pareados, sem intensidade de sinal
+     */
+    List<DiscoveredDevice> getBondedDevices();
+
+    /**
+     * Inicia uma busca, cancelando a anterior. Os resultados chegam em listener até
+     * onDiscoveryFinished ou cancelDiscovery
+     *
+     * @param listener
+     * @return false se a busca não pôde ser iniciada
+     */
+    boolean startDiscovery(Listener listener);
+
+    /**
+     * Cancela a busca; o listener dela não recebe mais nada
+     */
+    void cancelDiscovery();
+}
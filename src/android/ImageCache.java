@@ -0,0 +1,101 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU de imagens já convertidas em comandos de impressão, limitado pelo total de bytes
+ */
+public class ImageCache {
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final LinkedHashMap<String, byte[]> mEntries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private int mMaxBytes;
+    private int mBytes;
+    private long mHits;
+    private long mMisses;
+
+    public ImageCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public ImageCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Armazena a imagem, descartando as menos usadas recentemente até caber no limite
+     *
+     * @param id
+     * @param commands
+     */
+    public synchronized void put(String id, byte[] commands) {
+        if (commands.length > mMaxBytes) {
+            throw new IllegalArgumentException("The image takes " + commands.length + " bytes, the cache limit is " + mMaxBytes);
+        }
+        byte[] previous = mEntries.remove(id);
+        if (previous != null) {
+            mBytes -= previous.length;
+        }
+        mEntries.put(id, commands);
+        mBytes += commands.length;
+        trim();
+    }
+
+    /**
+     * @param id
+     * @return byte[] ou null se a imagem não estiver no cache
+     */
+    public synchronized byte[] get(String id) {
+        byte[] commands = mEntries.get(id);
+        if (commands == null) {
+            mMisses++;
+        } else {
+            mHits++;
+        }
+        return commands;
+    }
+
+    public synchronized boolean remove(String id) {
+        byte[] previous = mEntries.remove(id);
+        if (previous == null) {
+            return false;
+        }
+        mBytes -= previous.length;
+        return true;
+    }
+
+    public synchronized void setMaxBytes(int maxBytes) {
+        mMaxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized int getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized int getBytes() {
+        return mBytes;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, byte[]>> iterator = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            mBytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+}
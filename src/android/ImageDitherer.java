@@ -0,0 +1,192 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.Arrays;
+
+/**
+ * Conversão de pixels ARGB para imagem monocromática (1 bit por pixel)
+ */
+public class ImageDitherer {
+    public enum Algorithm {
+        THRESHOLD("threshold"),
+        ORDERED("ordered"),
+        FLOYD_STEINBERG("floydSteinberg");
+
+        private final String mName;
+
+        Algorithm(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @param name threshold, ordered ou floydSteinberg
+         * @return Algorithm
+         */
+        public static Algorithm fromName(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.mName.equalsIgnoreCase(name)) {
+                    return algorithm;
+                }
+            }
+            throw new IllegalArgumentException("Unknown dithering algorithm: " + name);
+        }
+    }
+
+    /**
+     * Matriz de Bayer 8x8, já convertida em limiares de 0 a 255
+     */
+    private static final int[] BAYER_THRESHOLDS = new int[64];
+
+    static {
+        int[] bayer = {
+                 0, 32,  8, 40,  2, 34, 10, 42,
+                48, 16, 56, 24, 50, 18, 58, 26,
+                12, 44,  4, 36, 14, 46,  6, 38,
+                60, 28, 52, 20, 62, 30, 54, 22,
+                 3, 35, 11, 43,  1, 33,  9, 41,
+                51, 19, 59, 27, 49, 17, 57, 25,
+                15, 47,  7, 39, 13, 45,  5, 37,
+                63, 31, 55, 23, 61, 29, 53, 21
+        };
+        for (int i = 0; i < bayer.length; i++) {
+            BAYER_THRESHOLDS[i] = bayer[i] * 4 + 2;
+        }
+    }
+
+    private final Algorithm mAlgorithm;
+    private final int mThreshold;
+    private int[] mGrayRow = new int[0];
+    private int[] mErrorRow = new int[0];
+    private int[] mNextErrorRow = new int[0];
+
+    public ImageDitherer(Algorithm algorithm) {
+        this(algorithm, 128);
+    }
+
+    /**
+     * @param algorithm
+     * @param threshold nível de cinza abaixo do qual o pixel é preto (usado por THRESHOLD e FLOYD_STEINBERG)
+     */
+    public ImageDitherer(Algorithm algorithm, int threshold) {
+        if (algorithm == null) {
+            throw new NullPointerException("The algorithm is null");
+        }
+        mAlgorithm = algorithm;
+        mThreshold = threshold;
+    }
+
+    public Algorithm getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    /**
+     * Converte a imagem, sem alterar o array argb
+     *
+     * @param argb
+     * @param width
+     * @param height
+     * @return MonochromeImage
+     */
+    public MonochromeImage dither(int[] argb, int width, int height) {
+        if (width < 1 || height < 1 || argb.length < width * height) {
+            throw new IllegalArgumentException("The size of image is illegal");
+        }
+        int bytesPerRow = MonochromeImage.bytesPerRow(width);
+        byte[] data = new byte[bytesPerRow * height];
+        ensureCapacity(width);
+
+        for (int y = 0; y < height; y++) {
+            int[] gray = mGrayRow;
+            int pixel = y * width;
+            for (int x = 0; x < width; x++, pixel++) {
+                gray[x] = luminance(argb[pixel]);
+            }
+            int rowOffset = y * bytesPerRow;
+            switch (mAlgorithm) {
+                case THRESHOLD:
+                    packThreshold(gray, width, data, rowOffset);
+                    break;
+                case ORDERED:
+                    packOrdered(gray, width, y, data, rowOffset);
+                    break;
+                case FLOYD_STEINBERG:
+                    packFloydSteinberg(gray, width, data, rowOffset);
+                    break;
+            }
+        }
+        return new MonochromeImage(width, height, data);
+    }
+
+    /**
+     * Luminância com a mesma fórmula inteira usada pelo SDK da Datecs
+     *
+     * @param color
+     * @return int de 0 a 255
+     */
+    static int luminance(int color) {
+        return (((color >> 16) & 0xFF) * 19 + ((color >> 8) & 0xFF) * 38 + (color & 0xFF) * 7) >> 6;
+    }
+
+    private void ensureCapacity(int width) {
+        if (mGrayRow.length < width) {
+            mGrayRow = new int[width];
+        }
+        if (mAlgorithm == Algorithm.FLOYD_STEINBERG) {
+            if (mErrorRow.length < width + 2) {
+                mErrorRow = new int[width + 2];
+                mNextErrorRow = new int[width + 2];
+            } else {
+                Arrays.fill(mErrorRow, 0);
+                Arrays.fill(mNextErrorRow, 0);
+            }
+        }
+    }
+
+    private void packThreshold(int[] gray, int width, byte[] data, int rowOffset) {
+        int threshold = mThreshold;
+        for (int x = 0; x < width; x++) {
+            if (gray[x] < threshold) {
+                data[rowOffset + (x >> 3)] |= 0x80 >> (x & 7);
+            }
+        }
+    }
+
+    private void packOrdered(int[] gray, int width, int y, byte[] data, int rowOffset) {
+        int matrixRow = (y & 7) << 3;
+        for (int x = 0; x < width; x++) {
+            if (gray[x] < BAYER_THRESHOLDS[matrixRow + (x & 7)]) {
+                data[rowOffset + (x >> 3)] |= 0x80 >> (x & 7);
+            }
+        }
+    }
+
+    /**
+     * Difusão de erro de Floyd–Steinberg em aritmética inteira (pesos 7, 3, 5 e 1 sobre 16).
+     * Os erros ficam em duas linhas deslocadas de uma posição para dispensar testes de borda.
+     */
+    private void packFloydSteinberg(int[] gray, int width, byte[] data, int rowOffset) {
+        int[] error = mErrorRow;
+        int[] next = mNextErrorRow;
+        int threshold = mThreshold;
+        for (int x = 0; x < width; x++) {
+            int value = gray[x] + (error[x + 1] >> 4);
+            int quantError;
+            if (value < threshold) {
+                data[rowOffset + (x >> 3)] |= 0x80 >> (x & 7);
+                quantError = value;
+            } else {
+                quantError = value - 255;
+            }
+            error[x + 2] += quantError * 7;
+            next[x] += quantError * 3;
+            next[x + 1] += quantError * 5;
+            next[x + 2] += quantError;
+        }
+        mErrorRow = next;
+        mNextErrorRow = error;
+        Arrays.fill(error, 0);
+    }
+}
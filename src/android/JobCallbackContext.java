@@ -0,0 +1,75 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.List;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+
+/**
+ * CallbackContext de um job com ID ou prioridade; a resposta final de um job com ID passa pelo
+ * JobRegistry, que a guarda e a repete para as tentativas anexadas ao job
+ */
+public class JobCallbackContext extends CallbackContext {
+    private final String mJobId;
+    private final JobPriority mPriority;
+    private final CallbackContext mDelegate;
+    private final JobRegistry mRegistry;
+    PluginResult mResult;
+    long mExpiresAt;
+    List<CallbackContext> mWaiters;
+    JSONObject mSpooledError;
+
+    /**
+     * @param jobId ID do job, ou null
+     * @param priority
+     * @param delegate
+     * @param webView
+     * @param registry null para jobs sem ID
+     */
+    JobCallbackContext(String jobId, JobPriority priority, CallbackContext delegate, CordovaWebView webView, JobRegistry registry) {
+        super(delegate.getCallbackId(), webView);
+        mJobId = jobId;
+        mPriority = priority;
+        mDelegate = delegate;
+        mRegistry = registry;
+    }
+
+    public String getJobId() {
+        return mJobId;
+    }
+
+    public JobPriority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Os dados do job ficaram pendentes no spool e serão impressos na próxima conexão
+     *
+     * @param error resposta para as próximas tentativas
+     */
+    public void setSpooled(JSONObject error) {
+        if (mRegistry != null) {
+            mRegistry.setSpooled(this, error);
+        }
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        if (pluginResult.getKeepCallback() || mRegistry == null) {
+            mDelegate.sendPluginResult(pluginResult);
+        } else {
+            mRegistry.finish(this, pluginResult, mDelegate);
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return mDelegate.isFinished();
+    }
+
+    boolean isExpired(long now) {
+        return mResult != null && now >= mExpiresAt;
+    }
+}
@@ -0,0 +1,36 @@
+package com.giorgiofellipe.datecsprinter;
+
+/**
+ * Prioridade de um job na fila da impressora; jobs de mesma prioridade seguem a ordem de chegada
+ */
+public enum JobPriority {
+    LOW("low"),
+    NORMAL("normal"),
+    HIGH("high");
+
+    private final String mName;
+
+    JobPriority(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @param name low, normal ou high; null ou vazio é normal
+     * @return JobPriority
+     */
+    public static JobPriority fromName(String name) {
+        if (name == null || name.length() == 0) {
+            return NORMAL;
+        }
+        for (JobPriority priority : values()) {
+            if (priority.mName.equalsIgnoreCase(name)) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown job priority: " + name);
+    }
+}
@@ -0,0 +1,128 @@
+package com.giorgiofellipe.datecsprinter;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jobs de impressão identificados pelo app, para que uma nova tentativa não imprima duas vezes
+ */
+public class JobRegistry {
+    public static final int DEFAULT_MAX_SIZE = 256;
+    public static final long DEFAULT_TTL = 10 * 60 * 1000;
+
+    private final PrinterMetrics mMetrics;
+    private final int mMaxSize;
+    private final long mTtl;
+    private final LinkedHashMap<String, JobCallbackContext> mJobs;
+
+    public JobRegistry(PrinterMetrics metrics) {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL, metrics);
+    }
+
+    /**
+     * @param maxSize
+     * @param ttl ms que a resposta de um job é guardada depois que ele termina
+     * @param metrics
+     */
+    public JobRegistry(int maxSize, long ttl, PrinterMetrics metrics) {
+        mMaxSize = Math.max(1, maxSize);
+        mTtl = ttl;
+        mMetrics = metrics;
+        mJobs = new LinkedHashMap<String, JobCallbackContext>(64, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JobCallbackContext> eldest) {
+                return size() > mMaxSize || eldest.getValue().isExpired(System.currentTimeMillis());
+            }
+        };
+    }
+
+    /**
+     * Registra uma chamada de impressão
+     *
+     * @param jobId null para um job sem ID, que só recebe a prioridade
+     * @param priority
+     * @param callbackContext
+     * @param webView
+     * @return callback que o job deve usar, ou null se a chamada já foi respondida ou
+     *         anexada ao job em andamento
+     */
+    public CallbackContext begin(String jobId, JobPriority priority, CallbackContext callbackContext, CordovaWebView webView) {
+        if (jobId == null) {
+            return new JobCallbackContext(null, priority, callbackContext, webView, null);
+        }
+        PluginResult stored;
+        synchronized (this) {
+            JobCallbackContext job = mJobs.get(jobId);
+            if (job != null && job.isExpired(System.currentTimeMillis())) {
+                mJobs.remove(jobId);
+                job = null;
+            }
+            if (job == null) {
+                job = new JobCallbackContext(jobId, priority, callbackContext, webView, this);
+                mJobs.put(jobId, job);
+                return job;
+            }
+            stored = job.mResult;
+            if (stored == null) {
+                if (job.mWaiters == null) {
+                    job.mWaiters = new ArrayList<CallbackContext>(2);
+                }
+                job.mWaiters.add(callbackContext);
+            }
+        }
+        mMetrics.recordDuplicateJob(stored == null);
+        if (stored != null) {
+            callbackContext.sendPluginResult(stored);
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return mJobs.size();
+    }
+
+    /**
+     * Guarda a resposta final do job e a entrega às tentativas anexadas a ele
+     */
+    void finish(JobCallbackContext job, PluginResult result, CallbackContext delegate) {
+        List<CallbackContext> waiters;
+        synchronized (this) {
+            waiters = job.mWaiters;
+            job.mWaiters = null;
+            if (job.mResult == null) {
+                job.mExpiresAt = System.currentTimeMillis() + mTtl;
+                if (result.getStatus() == PluginResult.Status.OK.ordinal()) {
+                    job.mResult = result;
+                } else if (job.mSpooledError != null) {
+                    job.mResult = new PluginResult(PluginResult.Status.ERROR, job.mSpooledError);
+                } else {
+                    job.mResult = result;
+                    if (mJobs.get(job.getJobId()) == job) {
+                        mJobs.remove(job.getJobId());
+                    }
+                }
+            }
+        }
+        delegate.sendPluginResult(result);
+        if (waiters != null) {
+            for (CallbackContext waiter : waiters) {
+                waiter.sendPluginResult(result);
+            }
+        }
+    }
+
+    /**
+     * Marca o job como guardado no spool; se ele falhar, as próximas tentativas recebem o erro
+     * informado em vez de imprimir de novo
+     */
+    synchronized void setSpooled(JobCallbackContext job, JSONObject error) {
+        job.mSpooledError = error;
+    }
+}
@@ -0,0 +1,112 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Histograma de latências em milissegundos, com faixas fixas
+ */
+public class LatencyHistogram {
+    public static final long[] DEFAULT_BOUNDS = { 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    private final long[] mBounds;
+    private final AtomicLongArray mBuckets;
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_BOUNDS);
+    }
+
+    /**
+     * @param bounds limites superiores das faixas, em ordem crescente
+     */
+    public LatencyHistogram(long[] bounds) {
+        mBounds = bounds.clone();
+        mBuckets = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Registra uma amostra
+     *
+     * @param millis
+     */
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < mBounds.length && millis > mBounds[bucket]) {
+            bucket++;
+        }
+        mBuckets.incrementAndGet(bucket);
+        mCount.incrementAndGet();
+        mSum.addAndGet(millis);
+        long max;
+        while (millis > (max = mMax.get()) && !mMax.compareAndSet(max, millis)) {
+            // tenta de novo
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public long getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * Estimativa do percentil pelo limite superior da faixa onde ele cai
+     *
+     * @param percentile de 0 a 100
+     * @return long
+     */
+    public long getPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < mBounds.length; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return mBounds[i];
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * @return {count, mean, max, p50, p90, p99, buckets: [{le, count}]}; the last bucket has no "le"
+     * @throws JSONException
+     */
+    public JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", getCount());
+        json.put("mean", getMean());
+        json.put("max", getMax());
+        json.put("p50", getPercentile(50));
+        json.put("p90", getPercentile(90));
+        json.put("p99", getPercentile(99));
+        JSONArray buckets = new JSONArray();
+        for (int i = 0; i <= mBounds.length; i++) {
+            JSONObject bucket = new JSONObject();
+            if (i < mBounds.length) {
+                bucket.put("le", mBounds[i]);
+            }
+            bucket.put("count", mBuckets.get(i));
+            buckets.put(bucket);
+        }
+        json.put("buckets", buckets);
+        return json;
+    }
+}
@@ -0,0 +1,39 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+
+/**
+ * CallbackContext que mede o tempo entre a entrada da ação na ponte e o seu callback final
+ */
+public class MeteredCallbackContext extends CallbackContext {
+    private final CallbackContext mDelegate;
+    private final PrinterMetrics mMetrics;
+    private final String mAction;
+    private final long mStart = System.currentTimeMillis();
+    private final AtomicBoolean mRecorded = new AtomicBoolean();
+
+    public MeteredCallbackContext(String action, CallbackContext delegate, CordovaWebView webView, PrinterMetrics metrics) {
+        super(delegate.getCallbackId(), webView);
+        mDelegate = delegate;
+        mMetrics = metrics;
+        mAction = action;
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        if (!pluginResult.getKeepCallback() && mRecorded.compareAndSet(false, true)) {
+            boolean success = pluginResult.getStatus() == PluginResult.Status.OK.ordinal();
+            mMetrics.recordAction(mAction, System.currentTimeMillis() - mStart, success);
+        }
+        mDelegate.sendPluginResult(pluginResult);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return mDelegate.isFinished();
+    }
+}
@@ -0,0 +1,399 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.datecs.api.printer.Printer;
+
+/**
+ * Imagem monocromática já empacotada em 1 bit por pixel, pronta para ser enviada à impressora
+ */
+public class MonochromeImage {
+    private static final int BAND_HEIGHT = 24;
+    private static final int MAX_FEED = 240;
+    private static final int MAX_RUN = 63;
+    private static final byte[] REVERSED_BITS = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int reversed = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((i & (1 << bit)) != 0) {
+                    reversed |= 0x80 >> bit;
+                }
+            }
+            REVERSED_BITS[i] = (byte) reversed;
+        }
+    }
+
+    /**
+     * Forma de enviar a imagem. COMPACT troca as faixas em branco por avanço de papel (ESC J)
+     * e corta as margens brancas que o alinhamento permite cortar sem mover a imagem: a da
+     * direita à esquerda, a da esquerda à direita, e a menor das duas dos dois lados ao centro.
+     * RLE faz o mesmo com as faixas comprimidas de Printer.printCompressedImage (ESC * 17),
+     * que nem todos os modelos aceitam.
+     */
+    public enum Compression {
+        NONE("none"),
+        COMPACT("compact"),
+        RLE("rle");
+
+        private final String mName;
+
+        Compression(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @param name none, compact ou rle
+         * @return Compression
+         */
+        public static Compression fromName(String name) {
+            for (Compression compression : values()) {
+                if (compression.mName.equalsIgnoreCase(name)) {
+                    return compression;
+                }
+            }
+            throw new IllegalArgumentException("Unknown image compression: " + name);
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mBytesPerRow;
+    private final byte[] mData;
+
+    /**
+     * @param width
+     * @param height
+     * @param data packed rows, (width + 7) / 8 bytes per row
+     */
+    public MonochromeImage(int width, int height, byte[] data) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("The size of image is illegal");
+        }
+        if (data == null) {
+            throw new NullPointerException("The data is null");
+        }
+        mWidth = width;
+        mHeight = height;
+        mBytesPerRow = bytesPerRow(width);
+        if (data.length < mBytesPerRow * height) {
+            throw new IllegalArgumentException("The data is shorter than " + (mBytesPerRow * height) + " bytes");
+        }
+        mData = data;
+    }
+
+    /**
+     * Quantidade de bytes de uma linha empacotada
+     *
+     * @param width
+     * @return int
+     */
+    public static int bytesPerRow(int width) {
+        return (width + 7) >> 3;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getBytesPerRow() {
+        return mBytesPerRow;
+    }
+
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * Verifica se o pixel (x, y) é preto
+     *
+     * @param x
+     * @param y
+     * @return boolean
+     */
+    public boolean isBlack(int x, int y) {
+        return (mData[y * mBytesPerRow + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    /**
+     * Envia a imagem à impressora em faixas de 24 pontos (ESC * 33), o mesmo formato usado
+     * por Printer.printImage, sem passar por Bitmap ou ARGB. Não faz flush.
+     *
+     * @param printer
+     * @param align
+     * @throws IOException
+     */
+    public void print(Printer printer, int align) throws IOException {
+        checkAlign(align);
+        printer.write(new byte[] { 27, 51, BAND_HEIGHT, 27, 97, (byte) align });
+
+        byte[] band = new byte[bandLength()];
+        for (int top = 0; top < mHeight; top += BAND_HEIGHT) {
+            fillBand(top, band, 0);
+            printer.write(band, 0, band.length);
+        }
+    }
+
+    /**
+     * Gera de uma só vez todos os comandos de impressão da imagem, para serem reenviados
+     * sem nova conversão
+     *
+     * @param align
+     * @return byte[]
+     */
+    public byte[] encode(int align) {
+        checkAlign(align);
+        int bands = (mHeight + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        byte[] commands = new byte[6 + bands * bandLength()];
+        commands[0] = 27;
+        commands[1] = 51;
+        commands[2] = BAND_HEIGHT;
+        commands[3] = 27;
+        commands[4] = 97;
+        commands[5] = (byte) align;
+        int offset = 6;
+        for (int top = 0; top < mHeight; top += BAND_HEIGHT) {
+            fillBand(top, commands, offset);
+            offset += bandLength();
+        }
+        return commands;
+    }
+
+    /**
+     * Tamanho dos comandos gerados por encode(align), sem compressão
+     *
+     * @return int
+     */
+    public int getRasterLength() {
+        return 6 + (mHeight + BAND_HEIGHT - 1) / BAND_HEIGHT * bandLength();
+    }
+
+    /**
+     * Gera os comandos de impressão da imagem com a compressão escolhida
+     *
+     * @param align
+     * @param compression
+     * @return byte[]
+     */
+    public byte[] encode(int align, Compression compression) {
+        if (compression == Compression.NONE) {
+            return encode(align);
+        }
+        checkAlign(align);
+
+        // colunas ocupadas e linhas em branco
+        boolean[] blankRows = new boolean[mHeight];
+        int minX = mWidth;
+        int maxX = -1;
+        for (int y = 0; y < mHeight; y++) {
+            int rowOffset = y * mBytesPerRow;
+            int first = -1;
+            int last = -1;
+            for (int xb = 0; xb < mBytesPerRow; xb++) {
+                if (mData[rowOffset + xb] != 0) {
+                    if (first < 0) {
+                        first = xb;
+                    }
+                    last = xb;
+                }
+            }
+            blankRows[y] = first < 0;
+            if (first >= 0) {
+                int packed = mData[rowOffset + first] & 0xFF;
+                minX = Math.min(minX, (first << 3) + Integer.numberOfLeadingZeros(packed) - 24);
+                packed = mData[rowOffset + last] & 0xFF;
+                maxX = Math.max(maxX, (last << 3) + 7 - Integer.numberOfTrailingZeros(packed));
+            }
+        }
+
+        boolean rle = compression == Compression.RLE && mBytesPerRow <= 255;
+        int unit = rle ? 8 : 1;
+        int span = rle ? mBytesPerRow * 8 : mWidth;
+        int first = 0;
+        int last = span - 1;
+        if (maxX >= 0) {
+            int left = minX / unit;
+            int right = (span - 1 - maxX) / unit;
+            if (align == Printer.ALIGN_LEFT) {
+                last = span - 1 - right * unit;
+            } else if (align == Printer.ALIGN_RIGHT) {
+                first = left * unit;
+            } else {
+                int margin = Math.min(left, right) * unit;
+                first = margin;
+                last = span - 1 - margin;
+            }
+        }
+
+        ByteArrayOutputStream commands = new ByteArrayOutputStream(rle ? mBytesPerRow * 24 : getRasterLength());
+        commands.write(27);
+        commands.write(51);
+        commands.write(BAND_HEIGHT);
+        commands.write(27);
+        commands.write(97);
+        commands.write(align);
+        int feed = 0;
+        byte[] band = null;
+        byte[] packed = null;
+        for (int top = 0; top < mHeight; top += BAND_HEIGHT) {
+            int bottom = Math.min(top + BAND_HEIGHT, mHeight);
+            boolean blank = true;
+            for (int y = top; y < bottom && blank; y++) {
+                blank = blankRows[y];
+            }
+            if (blank) {
+                feed += BAND_HEIGHT;
+                continue;
+            }
+            feed = writeFeed(commands, feed);
+            if (rle) {
+                int columns = (last - first + 1) / 8;
+                if (band == null) {
+                    band = new byte[columns * BAND_HEIGHT];
+                    packed = new byte[band.length * 2];
+                }
+                fillCompressedBand(top, first / 8, columns, band);
+                int length = compress(band, packed);
+                commands.write(27);
+                commands.write(42);
+                commands.write(17);
+                commands.write(columns);
+                commands.write(packed, 0, length);
+            } else {
+                int columns = last - first + 1;
+                if (band == null) {
+                    band = new byte[5 + columns * 3 + 1];
+                }
+                fillBand(top, first, columns, band, 0);
+                commands.write(band, 0, band.length - 1);
+            }
+            commands.write(10);
+        }
+        writeFeed(commands, feed);
+        return commands.toByteArray();
+    }
+
+    /**
+     * Avança o papel em pontos, em comandos ESC J de até MAX_FEED pontos
+     *
+     * @return 0
+     */
+    private static int writeFeed(ByteArrayOutputStream commands, int dots) {
+        while (dots > 0) {
+            int step = Math.min(dots, MAX_FEED);
+            commands.write(27);
+            commands.write(74);
+            commands.write(step);
+            dots -= step;
+        }
+        return 0;
+    }
+
+    /**
+     * Preenche band com as 24 linhas da faixa, por linha, com o pixel da esquerda no bit menos
+     * significativo, como Printer.printCompressedImage
+     */
+    private void fillCompressedBand(int top, int firstByte, int columns, byte[] band) {
+        Arrays.fill(band, (byte) 0);
+        int bottom = Math.min(top + BAND_HEIGHT, mHeight);
+        for (int y = top; y < bottom; y++) {
+            int source = y * mBytesPerRow + firstByte;
+            int target = (y - top) * columns;
+            for (int i = 0; i < columns; i++) {
+                band[target + i] = REVERSED_BITS[mData[source + i] & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * RLE do formato de Printer.printCompressedImage: repetições viram 0xC0 | quantidade e o
+     * byte; um byte isolado com os dois bits altos ligados vira 0xC1 e o byte
+     *
+     * @return tamanho comprimido
+     */
+    private static int compress(byte[] source, byte[] target) {
+        int length = 0;
+        int i = 0;
+        while (i < source.length) {
+            byte value = source[i];
+            int run = 1;
+            while (i + run < source.length && run < MAX_RUN && source[i + run] == value) {
+                run++;
+            }
+            if (run > 1 || (value & 0xC0) == 0xC0) {
+                target[length++] = (byte) (0xC0 | run);
+            }
+            target[length++] = value;
+            i += run;
+        }
+        return length;
+    }
+
+    private static void checkAlign(int align) {
+        if (align < Printer.ALIGN_LEFT || align > Printer.ALIGN_RIGHT) {
+            throw new IllegalArgumentException("The align is illegal");
+        }
+    }
+
+    private int bandLength() {
+        return 5 + mWidth * 3 + 1;
+    }
+
+    /**
+     * Escreve em target, a partir de offset, o comando ESC * 33 da faixa que começa na linha top
+     *
+     * @param top
+     * @param target
+     * @param offset
+     */
+    private void fillBand(int top, byte[] target, int offset) {
+        fillBand(top, 0, mWidth, target, offset);
+    }
+
+    /**
+     * Como fillBand(top, target, offset), só com as colunas de first a first + columns - 1
+     */
+    private void fillBand(int top, int first, int columns, byte[] target, int offset) {
+        int end = offset + 5 + columns * 3;
+        target[offset] = 27;
+        target[offset + 1] = 42;
+        target[offset + 2] = 33;
+        target[offset + 3] = (byte) (columns & 0xFF);
+        target[offset + 4] = (byte) (columns >> 8);
+        target[end] = 10;
+        int limit = first + columns;
+
+        int data = offset + 5;
+        Arrays.fill(target, data, end, (byte) 0);
+        int bottom = Math.min(top + BAND_HEIGHT, mHeight);
+        for (int y = top; y < bottom; y++) {
+            int dy = y - top;
+            int index = data + (dy >> 3) - first * 3;
+            int mask = 0x80 >> (dy & 7);
+            int rowOffset = y * mBytesPerRow;
+            for (int xb = first >> 3; xb < mBytesPerRow; xb++) {
+                int packed = mData[rowOffset + xb] & 0xFF;
+                if (packed == 0) {
+                    continue;
+                }
+                int x = xb << 3;
+                for (int bit = 0; bit < 8 && x < limit; bit++, x++) {
+                    if (x >= first && (packed & (0x80 >> bit)) != 0) {
+                        target[index + x * 3] |= mask;
+                    }
+                }
+            }
+        }
+    }
+}
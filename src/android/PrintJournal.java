@@ -0,0 +1,383 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Diário de impressão em arquivo, só de acréscimos, que sobrevive ao fechamento do app
+ *
+ * Registro: tipo (1 byte), id (8), tamanho (4), dados e o CRC32 dos campos anteriores (4)
+ */
+public class PrintJournal {
+    public static final long DEFAULT_COMPACT_THRESHOLD = 1024 * 1024;
+    public static final long DEFAULT_SYNC_DELAY = 50;
+
+    private static final byte TYPE_JOB = 1;
+    private static final byte TYPE_DONE = 2;
+    private static final int HEADER_LENGTH = 13;
+    private static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+
+    private static ScheduledExecutorService sSyncScheduler;
+
+    private final File mFile;
+    private final long mCompactThreshold;
+    private final long mSyncDelay;
+    private RandomAccessFile mRaf;
+    private final Map<Long, long[]> mPending = new LinkedHashMap<Long, long[]>();
+    private long mNextId = 1;
+    private boolean mDirty;
+    private boolean mSyncScheduled;
+    private long mAppended;
+    private long mSyncs;
+    private long mCompactions;
+    private long mRecovered;
+
+    public PrintJournal(File file) throws IOException {
+        this(file, DEFAULT_COMPACT_THRESHOLD, DEFAULT_SYNC_DELAY);
+    }
+
+    public PrintJournal(File file, long compactThreshold) throws IOException {
+        this(file, compactThreshold, DEFAULT_SYNC_DELAY);
+    }
+
+    /**
+     * Abre o diário, recuperando os jobs pendentes de uma execução anterior
+     *
+     * @param file
+     * @param compactThreshold tamanho do arquivo a partir do qual ele é reescrito
+     * @param syncDelay ms que um registro pode esperar para ir ao disco; 0 sincroniza a cada job
+     * @throws IOException
+     */
+    public PrintJournal(File file, long compactThreshold, long syncDelay) throws IOException {
+        mFile = file;
+        mCompactThreshold = compactThreshold;
+        mSyncDelay = Math.max(0, syncDelay);
+        mRaf = new RandomAccessFile(file, "rw");
+        recover();
+    }
+
+    /**
+     * Registra um job. Com syncDelay, o registro vai ao disco na próxima sincronização agrupada
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return id do job
+     * @throws IOException
+     */
+    public synchronized long append(byte[] data, int offset, int length) throws IOException {
+        long id = mNextId++;
+        long position = mRaf.length();
+        writeRecord(position, TYPE_JOB, id, data, offset, length);
+        mPending.put(id, new long[] { position + HEADER_LENGTH, length });
+        mAppended++;
+        if (mSyncDelay == 0) {
+            sync();
+        } else {
+            mDirty = true;
+            scheduleSync();
+        }
+        return id;
+    }
+
+    /**
+     * Marca o job como impresso. Não força a gravação em disco
+     *
+     * @param id
+     * @throws IOException
+     */
+    public synchronized void done(long id) throws IOException {
+        if (mPending.remove(id) == null) {
+            return;
+        }
+        if (mPending.isEmpty()) {
+            mRaf.setLength(0);
+            mDirty = true;
+            return;
+        }
+        writeRecord(mRaf.length(), TYPE_DONE, id, null, 0, 0);
+        mDirty = true;
+        if (mRaf.length() > mCompactThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Ids dos jobs ainda não impressos, na ordem em que foram registrados
+     *
+     * @return List
+     */
+    public synchronized List<Long> getPending() {
+        return new ArrayList<Long>(mPending.keySet());
+    }
+
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Lê o conteúdo de um job pendente
+     *
+     * @param id
+     * @return byte[] ou null se o job não estiver pendente
+     * @throws IOException
+     */
+    public synchronized byte[] read(long id) throws IOException {
+        long[] location = mPending.get(id);
+        if (location == null) {
+            return null;
+        }
+        byte[] data = new byte[(int) location[1]];
+        mRaf.seek(location[0]);
+        mRaf.readFully(data);
+        return data;
+    }
+
+    /**
+     * Descarta todos os jobs pendentes
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        mPending.clear();
+        mRaf.setLength(0);
+        sync();
+    }
+
+    /**
+     * Grava em disco o que ainda não foi sincronizado
+     *
+     * @throws IOException
+     */
+    public synchronized void sync() throws IOException {
+        mRaf.getChannel().force(false);
+        mDirty = false;
+        mSyncs++;
+    }
+
+    /**
+     * Agenda a sincronização dos registros gravados desde a última, se ainda não houver uma
+     */
+    private void scheduleSync() {
+        if (mSyncScheduled) {
+            return;
+        }
+        mSyncScheduled = true;
+        syncScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                syncPending();
+            }
+        }, mSyncDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sincronização agrupada, fora do lock para não bloquear os registros que chegam enquanto
+     * o disco grava
+     */
+    private void syncPending() {
+        FileChannel channel;
+        synchronized (this) {
+            mSyncScheduled = false;
+            if (!mDirty) {
+                return;
+            }
+            channel = mRaf.getChannel();
+            mDirty = false;
+            mSyncs++;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // fechado ou compactado enquanto isso; close() e compact() já gravaram o arquivo
+        } catch (IOException e) {
+            synchronized (this) {
+                mDirty = true;
+            }
+        }
+    }
+
+    private static synchronized ScheduledExecutorService syncScheduler() {
+        if (sSyncScheduler == null) {
+            sSyncScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatecsPrinter-journal");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sSyncScheduler;
+    }
+
+    public synchronized void close() throws IOException {
+        if (mDirty) {
+            sync();
+        }
+        mRaf.close();
+    }
+
+    public synchronized long length() throws IOException {
+        return mRaf.length();
+    }
+
+    public synchronized long getAppended() {
+        return mAppended;
+    }
+
+    public synchronized long getSyncs() {
+        return mSyncs;
+    }
+
+    public synchronized long getCompactions() {
+        return mCompactions;
+    }
+
+    /**
+     * Jobs pendentes encontrados ao abrir o diário
+     *
+     * @return long
+     */
+    public synchronized long getRecovered() {
+        return mRecovered;
+    }
+
+    /**
+     * Relê o arquivo e corta o final a partir do primeiro registro incompleto ou corrompido
+     */
+    private void recover() throws IOException {
+        long length = mRaf.length();
+        long position = 0;
+        CRC32 crc = new CRC32();
+        byte[] header = new byte[HEADER_LENGTH];
+        while (position + HEADER_LENGTH + 4 <= length) {
+            mRaf.seek(position);
+            mRaf.readFully(header);
+            byte type = header[0];
+            long id = readLong(header, 1);
+            int payloadLength = readInt(header, 9);
+            if ((type != TYPE_JOB && type != TYPE_DONE) || payloadLength < 0 || payloadLength > MAX_PAYLOAD
+                    || position + HEADER_LENGTH + payloadLength + 4 > length) {
+                break;
+            }
+            byte[] payload = new byte[payloadLength];
+            try {
+                mRaf.readFully(payload);
+                crc.reset();
+                crc.update(header);
+                crc.update(payload);
+                if ((int) crc.getValue() != mRaf.readInt()) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            if (type == TYPE_JOB) {
+                mPending.put(id, new long[] { position + HEADER_LENGTH, payloadLength });
+            } else {
+                mPending.remove(id);
+            }
+            mNextId = Math.max(mNextId, id + 1);
+            position += HEADER_LENGTH + payloadLength + 4;
+        }
+        if (position < length) {
+            mRaf.setLength(position);
+            sync();
+        }
+        mRecovered = mPending.size();
+        if (mPending.isEmpty() && position > 0) {
+            mRaf.setLength(0);
+            sync();
+        }
+    }
+
+    /**
+     * Reescreve o arquivo só com os jobs pendentes e o substitui de forma atômica
+     */
+    private void compact() throws IOException {
+        File temp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile compacted = new RandomAccessFile(temp, "rw");
+        Map<Long, long[]> locations = new LinkedHashMap<Long, long[]>();
+        try {
+            compacted.setLength(0);
+            RandomAccessFile original = mRaf;
+            mRaf = compacted;
+            try {
+                for (Map.Entry<Long, long[]> entry : mPending.entrySet()) {
+                    long[] location = entry.getValue();
+                    byte[] data = new byte[(int) location[1]];
+                    original.seek(location[0]);
+                    original.readFully(data);
+                    long position = compacted.length();
+                    writeRecord(position, TYPE_JOB, entry.getKey(), data, 0, data.length);
+                    locations.put(entry.getKey(), new long[] { position + HEADER_LENGTH, data.length });
+                }
+                compacted.getChannel().force(false);
+            } finally {
+                mRaf = original;
+            }
+        } finally {
+            compacted.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Could not replace " + mFile);
+        }
+        mRaf.close();
+        mRaf = new RandomAccessFile(mFile, "rw");
+        mPending.clear();
+        mPending.putAll(locations);
+        mDirty = false;
+        mCompactions++;
+    }
+
+    private void writeRecord(long position, byte type, long id, byte[] data, int offset, int length) throws IOException {
+        byte[] record = new byte[HEADER_LENGTH + length + 4];
+        record[0] = type;
+        writeLong(record, 1, id);
+        writeInt(record, 9, length);
+        if (length > 0) {
+            System.arraycopy(data, offset, record, HEADER_LENGTH, length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, HEADER_LENGTH + length);
+        writeInt(record, HEADER_LENGTH + length, (int) crc.getValue());
+        mRaf.seek(position);
+        mRaf.write(record);
+    }
+
+    private static long readLong(byte[] buffer, int offset) {
+        return ((long) readInt(buffer, offset) << 32) | (readInt(buffer, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        writeInt(buffer, offset, (int) (value >>> 32));
+        writeInt(buffer, offset + 4, (int) value);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
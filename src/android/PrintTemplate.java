@@ -0,0 +1,123 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+
+/**
+ * Texto com tags de formatação compilado uma única vez em comandos da impressora
+ */
+public class PrintTemplate {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Charset mCharset;
+    private final byte[][] mLiterals;
+    private final String[] mFields;
+    private final int mLiteralLength;
+
+    private PrintTemplate(List<byte[]> literals, List<String> fields, Charset charset) {
+        mCharset = charset;
+        mLiterals = literals.toArray(new byte[literals.size()][]);
+        mFields = fields.toArray(new String[fields.size()]);
+        int length = 0;
+        for (byte[] literal : mLiterals) {
+            length += literal.length;
+        }
+        mLiteralLength = length;
+    }
+
+    /**
+     * Compila o template no charset padrão
+     *
+     * @param template texto com tags e campos {{nome}}
+     * @return PrintTemplate
+     * @throws IllegalArgumentException se um campo não for fechado ou não tiver nome
+     */
+    public static PrintTemplate compile(String template) {
+        return compile(template, Charset.defaultCharset());
+    }
+
+    /**
+     * Compila o template; o texto e os valores dos campos são codificados em charset
+     *
+     * @param template texto com tags e campos {{nome}}
+     * @param charset
+     * @return PrintTemplate
+     * @throws IllegalArgumentException se um campo não for fechado ou não tiver nome
+     */
+    public static PrintTemplate compile(String template, Charset charset) {
+        if (template == null) {
+            throw new NullPointerException("The template is null");
+        }
+        List<byte[]> literals = new ArrayList<byte[]>();
+        List<String> fields = new ArrayList<String>();
+        TextEncoder encoder = new TextEncoder(charset);
+        encoder.appendTagged("");
+        int length = template.length();
+        int runStart = 0;
+        int i = 0;
+        while (i < length) {
+            int next = template.indexOf("{{", i);
+            if (next < 0) {
+                break;
+            }
+            int end = template.indexOf("}}", next + 2);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder at " + next);
+            }
+            String field = template.substring(next + 2, end).trim();
+            if (field.length() == 0) {
+                throw new IllegalArgumentException("Empty placeholder at " + next);
+            }
+            encoder.appendTags(template.substring(runStart, next));
+            literals.add(encoder.toByteArray());
+            encoder.clear();
+            fields.add(field);
+            i = end + 2;
+            runStart = i;
+        }
+        encoder.appendTags(template.substring(runStart, length));
+        literals.add(encoder.toByteArray());
+        return new PrintTemplate(literals, fields, charset);
+    }
+
+    /**
+     * Nomes dos campos, na ordem em que aparecem
+     *
+     * @return String[]
+     */
+    public String[] getFields() {
+        return mFields.clone();
+    }
+
+    /**
+     * Gera os comandos com os valores preenchidos; campos ausentes ficam vazios
+     *
+     * @param data
+     * @return byte[]
+     */
+    public byte[] render(JSONObject data) {
+        byte[][] values = new byte[mFields.length][];
+        int length = mLiteralLength;
+        for (int i = 0; i < mFields.length; i++) {
+            String field = mFields[i];
+            values[i] = data == null || data.isNull(field) ? EMPTY : data.optString(field).getBytes(mCharset);
+            length += values[i].length;
+        }
+
+        byte[] commands = new byte[length];
+        int offset = 0;
+        for (int i = 0; i < mLiterals.length; i++) {
+            byte[] literal = mLiterals[i];
+            System.arraycopy(literal, 0, commands, offset, literal.length);
+            offset += literal.length;
+            if (i < values.length) {
+                System.arraycopy(values[i], 0, commands, offset, values[i].length);
+                offset += values[i].length;
+            }
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,142 @@
+package com.giorgiofellipe.datecsprinter;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * Envia os eventos da impressora para os callbacks inscritos via subscribeEvents
+ */
+public class PrinterEventDispatcher {
+    private static final String LOG_TAG = "BluetoothPrinter";
+    public static final long COALESCE_WINDOW = 100;
+
+    public static final String PAPER = "paper";
+    public static final String OVERHEAT = "overheat";
+    public static final String LOW_BATTERY = "lowBattery";
+    public static final String CONNECTION = "connection";
+
+    private final List<CallbackContext> mSubscribers = new ArrayList<CallbackContext>();
+    private final Map<String, PendingEvent> mPending = new LinkedHashMap<String, PendingEvent>();
+    private ScheduledExecutorService mScheduler;
+    private boolean mFlushScheduled;
+
+    private static class PendingEvent {
+        final String address;
+        final String type;
+        final boolean state;
+        final long timestamp;
+        final int coalesced;
+
+        PendingEvent(String address, String type, boolean state, long timestamp, int coalesced) {
+            this.address = address;
+            this.type = type;
+            this.state = state;
+            this.timestamp = timestamp;
+            this.coalesced = coalesced;
+        }
+    }
+
+    /**
+     * Inscreve um callback; ele permanece aberto até unsubscribe
+     *
+     * @param callbackContext
+     */
+    public synchronized void subscribe(CallbackContext callbackContext) {
+        mSubscribers.add(callbackContext);
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    /**
+     * Encerra todos os callbacks inscritos
+     */
+    public synchronized void unsubscribeAll() {
+        for (CallbackContext subscriber : mSubscribers) {
+            subscriber.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+        }
+        mSubscribers.clear();
+        mPending.clear();
+    }
+
+    public synchronized boolean hasSubscribers() {
+        return !mSubscribers.isEmpty();
+    }
+
+    /**
+     * Registra um evento para envio; eventos do mesmo tipo e da mesma impressora dentro da
+     * janela são agrupados
+     *
+     * @param address
+     * @param type
+     * @param state
+     */
+    public synchronized void post(String address, String type, boolean state) {
+        if (mSubscribers.isEmpty()) {
+            return;
+        }
+        String key = address + "/" + type;
+        PendingEvent previous = mPending.remove(key);
+        int coalesced = previous == null ? 0 : previous.coalesced + 1;
+        mPending.put(key, new PendingEvent(address, type, state, System.currentTimeMillis(), coalesced));
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, COALESCE_WINDOW, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flush() {
+        mFlushScheduled = false;
+        for (PendingEvent event : mPending.values()) {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("address", event.address);
+                json.put("type", event.type);
+                json.put("state", event.state);
+                json.put("timestamp", event.timestamp);
+                json.put("coalesced", event.coalesced);
+            } catch (JSONException e) {
+                Log.e(LOG_TAG, e.getMessage());
+                continue;
+            }
+            for (CallbackContext subscriber : mSubscribers) {
+                PluginResult result = new PluginResult(PluginResult.Status.OK, json);
+                result.setKeepCallback(true);
+                subscriber.sendPluginResult(result);
+            }
+        }
+        mPending.clear();
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (mScheduler == null) {
+            mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatecsPrinter-event-dispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mScheduler;
+    }
+}
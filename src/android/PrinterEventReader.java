@@ -0,0 +1,122 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.IOException;
+
+import com.datecs.api.printer.ProtocolAdapter;
+
+/**
+ * Leitor de eventos do canal da impressora, ligado ao ciclo de vida da conexão
+ */
+public class PrinterEventReader implements Runnable {
+    public static final long BUSY_INTERVAL = 50;
+    public static final long MIN_IDLE_INTERVAL = 100;
+    public static final long MAX_IDLE_INTERVAL = 1000;
+
+    public interface Listener {
+        /**
+         * Chamado uma única vez, na thread do leitor, quando o canal falha
+         *
+         * @param e
+         */
+        void onEventReaderFailed(IOException e);
+    }
+
+    private final ProtocolAdapter.Channel mChannel;
+    private final Listener mListener;
+    private final String mName;
+    private final Object mLock = new Object();
+    private Thread mThread;
+    private volatile boolean mRunning;
+    private boolean mBusy;
+    private long mIdleInterval = MIN_IDLE_INTERVAL;
+
+    public PrinterEventReader(ProtocolAdapter.Channel channel, Listener listener, String name) {
+        mChannel = channel;
+        mListener = listener;
+        mName = name;
+    }
+
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        mRunning = true;
+        mThread = new Thread(this, mName);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Interrompe a leitura sem esperar a thread, que pode estar num callback do listener
+     * aguardando o lock de quem a encerra. Depois disso o listener não é mais chamado
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+            mThread = null;
+            mRunning = false;
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Informa se há jobs na fila; enquanto houver, o canal é lido no intervalo mais curto
+     *
+     * @param busy
+     */
+    public void setBusy(boolean busy) {
+        synchronized (mLock) {
+            mBusy = busy;
+            if (busy) {
+                mIdleInterval = MIN_IDLE_INTERVAL;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Informa que um evento chegou, para voltar ao intervalo mínimo
+     */
+    public void onEvent() {
+        synchronized (mLock) {
+            mIdleInterval = MIN_IDLE_INTERVAL;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (mRunning) {
+            try {
+                mChannel.pullEvent();
+            } catch (IOException e) {
+                if (mRunning) {
+                    mRunning = false;
+                    mListener.onEventReaderFailed(e);
+                }
+                return;
+            }
+
+            try {
+                synchronized (mLock) {
+                    long interval;
+                    if (mBusy) {
+                        interval = BUSY_INTERVAL;
+                    } else {
+                        interval = mIdleInterval;
+                        mIdleInterval = Math.min(mIdleInterval * 2, MAX_IDLE_INTERVAL);
+                    }
+                    mLock.wait(interval);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
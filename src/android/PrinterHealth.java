@@ -0,0 +1,133 @@
+package com.giorgiofellipe.datecsprinter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Último estado conhecido da impressora: status, temperatura e os avisos do canal de eventos
+ */
+public class PrinterHealth {
+    public static final long DEFAULT_TTL = 1000;
+
+    private long mTtl = DEFAULT_TTL;
+    private int mStatus;
+    private long mStatusTime;
+    private int mTemperature;
+    private long mTemperatureTime;
+    private Boolean mPaper;
+    private Boolean mOverheated;
+    private Boolean mLowBattery;
+    private long mHits;
+    private long mMisses;
+
+    public synchronized void setTtl(long ttl) {
+        mTtl = Math.max(0, ttl);
+    }
+
+    public synchronized long getTtl() {
+        return mTtl;
+    }
+
+    public synchronized void setStatus(int status) {
+        mStatus = status;
+        mStatusTime = System.currentTimeMillis();
+    }
+
+    public synchronized void setTemperature(int temperature) {
+        mTemperature = temperature;
+        mTemperatureTime = System.currentTimeMillis();
+    }
+
+    public synchronized void setPaper(boolean ready) {
+        mPaper = ready;
+        mStatusTime = 0;
+    }
+
+    public synchronized void setOverheated(boolean overheated) {
+        mOverheated = overheated;
+        mStatusTime = 0;
+        mTemperatureTime = 0;
+    }
+
+    public synchronized void setLowBattery(boolean lowBattery) {
+        mLowBattery = lowBattery;
+        mStatusTime = 0;
+    }
+
+    /**
+     * @return status lido há menos que o TTL, ou null
+     */
+    public synchronized Integer getStatus() {
+        if (!isFresh(mStatusTime)) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return mStatus;
+    }
+
+    /**
+     * @return temperatura lida há menos que o TTL, ou null
+     */
+    public synchronized Integer getTemperature() {
+        if (!isFresh(mTemperatureTime)) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return mTemperature;
+    }
+
+    /**
+     * Indica se status e temperatura podem ser respondidos sem consultar a impressora
+     *
+     * @return boolean
+     */
+    public synchronized boolean isFresh() {
+        return isFresh(mStatusTime) && isFresh(mTemperatureTime);
+    }
+
+    /**
+     * Descarta o que foi lido da impressora, que passa a ser consultada na próxima chamada
+     */
+    public synchronized void invalidate() {
+        mStatusTime = 0;
+        mTemperatureTime = 0;
+    }
+
+    /**
+     * Esquece todo o estado, ao encerrar a conexão
+     */
+    public synchronized void clear() {
+        invalidate();
+        mPaper = null;
+        mOverheated = null;
+        mLowBattery = null;
+    }
+
+    /**
+     * Estado atual; campos nunca lidos ficam nulos
+     *
+     * @return JSONObject com status, temperature, paper, overheated, lowBattery e age (ms desde a última leitura)
+     * @throws JSONException
+     */
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        long now = System.currentTimeMillis();
+        json.put("status", mStatusTime > 0 ? mStatus : JSONObject.NULL);
+        json.put("temperature", mTemperatureTime > 0 ? mTemperature : JSONObject.NULL);
+        json.put("paper", mPaper != null ? mPaper : JSONObject.NULL);
+        json.put("overheated", mOverheated != null ? mOverheated : JSONObject.NULL);
+        json.put("lowBattery", mLowBattery != null ? mLowBattery : JSONObject.NULL);
+        long read = Math.min(mStatusTime, mTemperatureTime);
+        json.put("age", read > 0 ? now - read : -1);
+        json.put("ttl", mTtl);
+        json.put("hits", mHits);
+        json.put("misses", mMisses);
+        return json;
+    }
+
+    private boolean isFresh(long time) {
+        return time > 0 && System.currentTimeMillis() - time < mTtl;
+    }
+}
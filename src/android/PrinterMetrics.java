@@ -0,0 +1,233 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Métricas do plugin: chamadas por ação, tempo até o callback, flush, bytes e erros
+ */
+public class PrinterMetrics {
+    public static final long[] LATENCY_BOUNDS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+    public static final long[] SIZE_BOUNDS = { 256, 1024, 4096, 16384, 65536, 262144 };
+
+    private volatile Accumulators mCurrent = new Accumulators();
+
+    /**
+     * Registra o fim de uma chamada da ponte JavaScript
+     *
+     * @param action
+     * @param millis da entrada na ponte até o callback final
+     * @param success
+     */
+    public void recordAction(String action, long millis, boolean success) {
+        Accumulators current = mCurrent;
+        ActionMetrics metrics = current.mActions.get(action);
+        if (metrics == null) {
+            ActionMetrics created = new ActionMetrics();
+            metrics = current.mActions.putIfAbsent(action, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        metrics.mCalls.incrementAndGet();
+        if (!success) {
+            metrics.mErrors.incrementAndGet();
+        }
+        metrics.mLatency.record(millis);
+    }
+
+    /**
+     * Conta um erro respondido ao JavaScript, pelo código da tabela de erros
+     *
+     * @param code
+     */
+    public void recordError(int code) {
+        Accumulators current = mCurrent;
+        AtomicLong counter = current.mErrors.get(code);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = current.mErrors.putIfAbsent(code, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    public void recordFlush(long millis) {
+        mCurrent.mFlush.record(millis);
+    }
+
+    /**
+     * @param bytes de uma escrita no socket
+     */
+    public void recordSocketWrite(long bytes) {
+        mCurrent.mSocketWrites.record(bytes);
+    }
+
+    /**
+     * @param bytes enviados à impressora por um job
+     */
+    public void recordJob(long bytes) {
+        Accumulators current = mCurrent;
+        current.mJobBytes.record(bytes);
+        current.mBytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * @param rawBytes tamanho da imagem sem compressão
+     * @param sentBytes tamanho enviado à impressora
+     */
+    public void recordImage(long rawBytes, long sentBytes) {
+        Accumulators current = mCurrent;
+        current.mImageBytes.addAndGet(sentBytes);
+        current.mImageBytesSaved.addAndGet(rawBytes - sentBytes);
+    }
+
+    /**
+     * Conta uma chamada com o ID de um job já conhecido
+     *
+     * @param attached true se foi anexada ao job em andamento, false se recebeu a resposta guardada
+     */
+    public void recordDuplicateJob(boolean attached) {
+        Accumulators current = mCurrent;
+        if (attached) {
+            current.mAttachedJobs.incrementAndGet();
+        } else {
+            current.mDuplicateJobs.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param priority
+     * @param millis do enfileiramento até o job começar
+     */
+    public void recordQueueWait(JobPriority priority, long millis) {
+        mCurrent.mQueueWait[priority.ordinal()].record(millis);
+    }
+
+    /**
+     * Conta um job longo que deu a vez a outro job entre dois trechos
+     */
+    public void recordPreemption() {
+        mCurrent.mPreemptions.incrementAndGet();
+    }
+
+    public void recordCancelledJob() {
+        mCurrent.mCancelledJobs.incrementAndGet();
+    }
+
+    public void recordConnect() {
+        mCurrent.mConnects.incrementAndGet();
+    }
+
+    public void recordConnectionLost() {
+        mCurrent.mConnectionsLost.incrementAndGet();
+    }
+
+    public void recordReconnect() {
+        mCurrent.mReconnects.incrementAndGet();
+    }
+
+    public void recordReconnectFailure() {
+        mCurrent.mReconnectFailures.incrementAndGet();
+    }
+
+    /**
+     * @return métricas acumuladas desde o início ou o último reset
+     * @throws JSONException
+     */
+    public JSONObject toJSON() throws JSONException {
+        return mCurrent.toJSON();
+    }
+
+    /**
+     * Devolve as métricas acumuladas e recomeça a contagem
+     *
+     * @return JSONObject
+     * @throws JSONException
+     */
+    public JSONObject toJSONAndReset() throws JSONException {
+        Accumulators previous = mCurrent;
+        mCurrent = new Accumulators();
+        return previous.toJSON();
+    }
+
+    private static class ActionMetrics {
+        final AtomicLong mCalls = new AtomicLong();
+        final AtomicLong mErrors = new AtomicLong();
+        final LatencyHistogram mLatency = new LatencyHistogram(LATENCY_BOUNDS);
+    }
+
+    private static class Accumulators {
+        final long mSince = System.currentTimeMillis();
+        final Map<String, ActionMetrics> mActions = new ConcurrentHashMap<String, ActionMetrics>();
+        final Map<Integer, AtomicLong> mErrors = new ConcurrentHashMap<Integer, AtomicLong>();
+        final LatencyHistogram mFlush = new LatencyHistogram(LATENCY_BOUNDS);
+        final LatencyHistogram mJobBytes = new LatencyHistogram(SIZE_BOUNDS);
+        final LatencyHistogram mSocketWrites = new LatencyHistogram(SIZE_BOUNDS);
+        final AtomicLong mBytesWritten = new AtomicLong();
+        final AtomicLong mImageBytes = new AtomicLong();
+        final AtomicLong mImageBytesSaved = new AtomicLong();
+        final AtomicLong mDuplicateJobs = new AtomicLong();
+        final AtomicLong mAttachedJobs = new AtomicLong();
+        final LatencyHistogram[] mQueueWait = new LatencyHistogram[JobPriority.values().length];
+        final AtomicLong mPreemptions = new AtomicLong();
+        final AtomicLong mCancelledJobs = new AtomicLong();
+        final AtomicLong mConnects = new AtomicLong();
+        final AtomicLong mConnectionsLost = new AtomicLong();
+        final AtomicLong mReconnects = new AtomicLong();
+        final AtomicLong mReconnectFailures = new AtomicLong();
+
+        Accumulators() {
+            for (int i = 0; i < mQueueWait.length; i++) {
+                mQueueWait[i] = new LatencyHistogram(LATENCY_BOUNDS);
+            }
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("since", mSince);
+            json.put("duration", System.currentTimeMillis() - mSince);
+            JSONObject actions = new JSONObject();
+            for (Map.Entry<String, ActionMetrics> entry : mActions.entrySet()) {
+                ActionMetrics metrics = entry.getValue();
+                JSONObject action = new JSONObject();
+                action.put("calls", metrics.mCalls.get());
+                action.put("errors", metrics.mErrors.get());
+                action.put("latency", metrics.mLatency.toJSON());
+                actions.put(entry.getKey(), action);
+            }
+            json.put("actions", actions);
+            JSONObject errors = new JSONObject();
+            for (Map.Entry<Integer, AtomicLong> entry : mErrors.entrySet()) {
+                errors.put(String.valueOf(entry.getKey()), entry.getValue().get());
+            }
+            json.put("errors", errors);
+            json.put("flush", mFlush.toJSON());
+            json.put("jobBytes", mJobBytes.toJSON());
+            json.put("bytesWritten", mBytesWritten.get());
+            json.put("socketWrites", mSocketWrites.toJSON());
+            json.put("imageBytes", mImageBytes.get());
+            json.put("imageBytesSaved", mImageBytesSaved.get());
+            json.put("duplicateJobs", mDuplicateJobs.get());
+            json.put("attachedJobs", mAttachedJobs.get());
+            JSONObject queueWait = new JSONObject();
+            for (JobPriority priority : JobPriority.values()) {
+                queueWait.put(priority.getName(), mQueueWait[priority.ordinal()].toJSON());
+            }
+            json.put("queueWait", queueWait);
+            json.put("preemptions", mPreemptions.get());
+            json.put("cancelledJobs", mCancelledJobs.get());
+            json.put("connects", mConnects.get());
+            json.put("connectionsLost", mConnectionsLost.get());
+            json.put("reconnects", mReconnects.get());
+            json.put("reconnectFailures", mReconnectFailures.get());
+            return json;
+        }
+    }
+}
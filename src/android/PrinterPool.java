@@ -0,0 +1,334 @@
+package com.giorgiofellipe.datecsprinter;
+
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaWebView;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conexões abertas com várias impressoras ao mesmo tempo, indexadas pelo endereço Bluetooth
+ */
+public class PrinterPool {
+    public static final int DEFAULT_MAX_SIZE = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+    private static final long SWEEP_INTERVAL = 30 * 1000;
+    private static final int QR_CODE_CACHE_BYTES = 256 * 1024;
+    private static final String LOG_TAG = "BluetoothPrinter";
+    private static final String SPOOL_DIRECTORY = "datecs-spool";
+
+    private final LinkedHashMap<String, DatecsSDKWrapper> mPrinters = new LinkedHashMap<String, DatecsSDKWrapper>(8, 0.75f, true);
+    private final ImageCache mImageCache = new ImageCache();
+    private final ImageCache mQRCodeCache = new ImageCache(QR_CODE_CACHE_BYTES);
+    private final Map<String, PrintTemplate> mTemplates = new ConcurrentHashMap<String, PrintTemplate>();
+    private final PrinterEventDispatcher mEventDispatcher = new PrinterEventDispatcher();
+    private final PrinterMetrics mMetrics = new PrinterMetrics();
+    private final DeviceDiscovery mDiscovery = new DeviceDiscovery();
+    private final JobRegistry mJobRegistry = new JobRegistry(mMetrics);
+    private final DatecsSDKWrapper mDetached;
+    private DatecsSDKWrapper mDefault;
+    private CordovaInterface mCordova;
+    private CordovaWebView mWebView;
+    private final BluetoothSocketFactory mBluetoothSocketFactory = new BluetoothSocketFactory();
+    private PrinterSocketFactory mSocketFactory = mBluetoothSocketFactory;
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+    private long mIdleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private ScheduledExecutorService mSweeper;
+
+    public PrinterPool() {
+        mDetached = newPrinter(null);
+        mDefault = mDetached;
+    }
+
+    public synchronized void setCordova(CordovaInterface cordova) {
+        if (cordova != null && mDiscovery.getAdapter() == null) {
+            mDiscovery.setAdapter(new BluetoothDiscoveryAdapter(cordova.getActivity()));
+        }
+        mCordova = cordova;
+        mDetached.setCordova(cordova);
+        for (DatecsSDKWrapper printer : mPrinters.values()) {
+            printer.setCordova(cordova);
+        }
+    }
+
+    public synchronized void setWebView(CordovaWebView webView) {
+        mWebView = webView;
+        mDetached.setWebView(webView);
+        for (DatecsSDKWrapper printer : mPrinters.values()) {
+            printer.setWebView(webView);
+        }
+    }
+
+    /**
+     * Define como as impressoras do pool serão conectadas; as já conectadas mudam na próxima conexão
+     *
+     * @param socketFactory null volta ao Bluetooth
+     */
+    public synchronized void setSocketFactory(PrinterSocketFactory socketFactory) {
+        mSocketFactory = socketFactory != null ? socketFactory : mBluetoothSocketFactory;
+        mDetached.setSocketFactory(mSocketFactory);
+        for (DatecsSDKWrapper printer : mPrinters.values()) {
+            printer.setSocketFactory(mSocketFactory);
+        }
+    }
+
+    /**
+     * Tenta todas as estratégias de socket Bluetooth ao mesmo tempo quando nenhuma é conhecida
+     * para a impressora; vale para todas as impressoras do pool
+     *
+     * @param parallel
+     */
+    public void setParallelConnect(boolean parallel) {
+        mBluetoothSocketFactory.setParallel(parallel);
+    }
+
+    /**
+     * Latência das conexões Bluetooth e a estratégia de socket de cada impressora do pool
+     *
+     * @return JSONObject
+     * @throws JSONException
+     */
+    public JSONObject getConnectStats() throws JSONException {
+        BluetoothSocketFactory factory = mBluetoothSocketFactory;
+        JSONObject json = factory.getLatency().toJSON();
+        json.put("failures", factory.getFailures());
+        json.put("parallel", factory.isParallel());
+        JSONObject strategies = new JSONObject();
+        for (String address : getAddresses()) {
+            BluetoothSocketFactory.Strategy strategy = factory.getStrategy(address);
+            if (strategy != null) {
+                strategies.put(address, strategy.getName());
+            }
+        }
+        json.put("strategies", strategies);
+        return json;
+    }
+
+    public synchronized void configure(int maxSize, long idleTimeout) {
+        mMaxSize = Math.max(1, maxSize);
+        mIdleTimeout = idleTimeout;
+        evictIdle();
+    }
+
+    /**
+     * Impressora de destino de uma chamada. Sem endereço, a última conectada; com um endereço
+     * que não está no pool, uma instância desconectada, que responde com erro às impressões
+     *
+     * @param address
+     * @return DatecsSDKWrapper
+     */
+    public synchronized DatecsSDKWrapper get(String address) {
+        if (address == null || address.length() == 0) {
+            return mDefault;
+        }
+        DatecsSDKWrapper printer = mPrinters.get(address);
+        return printer != null ? printer : mDetached;
+    }
+
+    /**
+     * Impressora do endereço informado, criando-a se necessário. Passa a ser a impressora padrão
+     *
+     * @param address
+     * @return DatecsSDKWrapper
+     */
+    public synchronized DatecsSDKWrapper acquire(String address) {
+        DatecsSDKWrapper printer = mPrinters.get(address);
+        if (printer == null) {
+            if (mPrinters.size() >= mMaxSize) {
+                evictLeastRecentlyUsed();
+            }
+            printer = newPrinter(address);
+            mPrinters.put(address, printer);
+            startSweeper();
+        }
+        mDefault = printer;
+        return printer;
+    }
+
+    /**
+     * Desconecta e remove a impressora do pool
+     *
+     * @param address
+     */
+    public void close(String address) {
+        DatecsSDKWrapper printer;
+        synchronized (this) {
+            printer = mPrinters.remove(address);
+            if (printer == null) {
+                return;
+            }
+            if (mDefault == printer) {
+                mDefault = mostRecentlyUsed();
+            }
+        }
+        printer.release();
+    }
+
+    /**
+     * Desconecta todas as impressoras
+     */
+    public void closeAll() {
+        List<DatecsSDKWrapper> printers;
+        synchronized (this) {
+            printers = new ArrayList<DatecsSDKWrapper>(mPrinters.values());
+            mPrinters.clear();
+            mDefault = mDetached;
+        }
+        for (DatecsSDKWrapper printer : printers) {
+            printer.release();
+        }
+    }
+
+    public PrinterMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public JobRegistry getJobRegistry() {
+        return mJobRegistry;
+    }
+
+    /**
+     * Cancela o job em qualquer uma das impressoras
+     *
+     * @param jobId
+     * @return estado do job, como em DatecsSDKWrapper.cancelJob
+     */
+    public String cancelJob(String jobId) {
+        for (DatecsSDKWrapper printer : getPrinters()) {
+            String state = printer.cancelJob(jobId);
+            if (!DatecsSDKWrapper.JOB_NOT_FOUND.equals(state)) {
+                return state;
+            }
+        }
+        return DatecsSDKWrapper.JOB_NOT_FOUND;
+    }
+
+    /**
+     * Define onde a busca de dispositivos procura, por exemplo um adaptador falso em testes
+     *
+     * @param adapter
+     */
+    public void setDiscoveryAdapter(DiscoveryAdapter adapter) {
+        mDiscovery.setAdapter(adapter);
+    }
+
+    public synchronized List<String> getAddresses() {
+        return new ArrayList<String>(mPrinters.keySet());
+    }
+
+    public synchronized List<DatecsSDKWrapper> getPrinters() {
+        return new ArrayList<DatecsSDKWrapper>(mPrinters.values());
+    }
+
+    private DatecsSDKWrapper newPrinter(String address) {
+        DatecsSDKWrapper printer = new DatecsSDKWrapper(mImageCache, mQRCodeCache, mTemplates, mEventDispatcher, mMetrics, mDiscovery);
+        printer.setAddress(address);
+        printer.setSocketFactory(mSocketFactory);
+        printer.setCordova(mCordova);
+        printer.setWebView(mWebView);
+        if (address != null && mCordova != null) {
+            printer.setJournal(openJournal(address));
+        }
+        return printer;
+    }
+
+    /**
+     * Diário de impressão do endereço; sem ele a impressora funciona, só não mantém o spool
+     *
+     * @param address
+     * @return PrintJournal ou null
+     */
+    private PrintJournal openJournal(String address) {
+        File directory = new File(mCordova.getActivity().getFilesDir(), SPOOL_DIRECTORY);
+        directory.mkdirs();
+        try {
+            return new PrintJournal(new File(directory, address.replace(':', '-') + ".journal"));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Falha ao abrir o spool: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private DatecsSDKWrapper mostRecentlyUsed() {
+        DatecsSDKWrapper last = mDetached;
+        for (DatecsSDKWrapper printer : mPrinters.values()) {
+            last = printer;
+        }
+        return last;
+    }
+
+    /**
+     * Libera espaço no pool desconectando a impressora ociosa usada há mais tempo; se nenhuma
+     * estiver ociosa, a usada há mais tempo
+     */
+    private void evictLeastRecentlyUsed() {
+        String victim = null;
+        for (Map.Entry<String, DatecsSDKWrapper> entry : mPrinters.entrySet()) {
+            if (victim == null) {
+                victim = entry.getKey();
+            }
+            if (entry.getValue().isIdle(0)) {
+                victim = entry.getKey();
+                break;
+            }
+        }
+        if (victim != null) {
+            DatecsSDKWrapper printer = mPrinters.remove(victim);
+            if (mDefault == printer) {
+                mDefault = mostRecentlyUsed();
+            }
+            printer.release();
+        }
+    }
+
+    private synchronized void evictIdle() {
+        Iterator<DatecsSDKWrapper> iterator = mPrinters.values().iterator();
+        while (iterator.hasNext()) {
+            DatecsSDKWrapper printer = iterator.next();
+            if (printer.isIdle(mIdleTimeout)) {
+                iterator.remove();
+                if (mDefault == printer) {
+                    mDefault = mDetached;
+                }
+                printer.release();
+            }
+        }
+        if (mDefault == mDetached) {
+            mDefault = mostRecentlyUsed();
+        }
+    }
+
+    private void startSweeper() {
+        if (mSweeper != null) {
+            return;
+        }
+        mSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DatecsPrinter-pool");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mSweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+}
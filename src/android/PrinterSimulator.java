@@ -0,0 +1,513 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Impressora simulada em memória, em modo raw ou no protocolo do ProtocolAdapter, para testar
+ * e medir o plugin sem hardware
+ */
+public class PrinterSimulator implements PrinterSocketFactory {
+    /**
+     * Bit do status usado pelo simulador para "sem papel"; ajuste ao modelo simulado
+     */
+    public static final int DEFAULT_PAPER_OUT_STATUS = 0x04;
+
+    // pacotes do ProtocolAdapter: canal, comando, tamanho (2 bytes) e dados
+    private static final int HEADER_SIZE = 4;
+    private static final int CHANNEL_PRINTER = 1;
+    private static final int COMMAND_SEND = 2;
+    private static final int COMMAND_REQUEST = 3;
+    private static final int COMMAND_GETSTATUS = 4;
+    private static final int REPLY_FLAG = 0x80;
+    // o SDK soma os dois bytes do tamanho da resposta, então cada resposta leva até 255 bytes
+    private static final int MAX_REPLY_DATA = 255;
+    private static final int STATUS_NO_PAPER = 0x20;
+    private static final int EVENT_PAPER_IN = 0x04;
+    private static final int EVENT_PAPER_OUT = 0x20;
+
+    private volatile int mBaudRate;
+    private volatile long mLatency;
+    private volatile long mConnectDelay;
+    private volatile int mStatus;
+    private volatile int mPaperOutStatus = DEFAULT_PAPER_OUT_STATUS;
+    private volatile boolean mPaperOut;
+    private volatile int mTemperature = 40;
+    private volatile boolean mFailConnect;
+    private volatile long mDisconnectAfter = -1;
+    private volatile boolean mProtocol;
+    private final Map<String, SimulatedSocket> mSockets = new ConcurrentHashMap<String, SimulatedSocket>();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mWrites = new AtomicLong();
+    private final AtomicLong mLines = new AtomicLong();
+    private final AtomicLong mQueries = new AtomicLong();
+    private final AtomicLong mConnects = new AtomicLong();
+
+    /**
+     * Velocidade da serial simulada; cada byte ocupa 10 bits. 0 recebe sem limite
+     *
+     * @param baudRate
+     * @return this
+     */
+    public PrinterSimulator setBaudRate(int baudRate) {
+        mBaudRate = Math.max(0, baudRate);
+        return this;
+    }
+
+    /**
+     * @param latency tempo até cada resposta, em ms
+     * @return this
+     */
+    public PrinterSimulator setLatency(long latency) {
+        mLatency = Math.max(0, latency);
+        return this;
+    }
+
+    /**
+     * @param connectDelay tempo de cada conexão, em ms
+     * @return this
+     */
+    public PrinterSimulator setConnectDelay(long connectDelay) {
+        mConnectDelay = Math.max(0, connectDelay);
+        return this;
+    }
+
+    public PrinterSimulator setStatus(int status) {
+        mStatus = status;
+        return this;
+    }
+
+    public PrinterSimulator setTemperature(int temperature) {
+        mTemperature = temperature;
+        return this;
+    }
+
+    /**
+     * Sem papel; no modo protocolo as conexões abertas também recebem o evento
+     *
+     * @param paperOut
+     * @return this
+     */
+    public PrinterSimulator setPaperOut(boolean paperOut) {
+        boolean changed = mPaperOut != paperOut;
+        mPaperOut = paperOut;
+        if (changed) {
+            for (SimulatedSocket socket : mSockets.values()) {
+                socket.sendEvent(paperOut ? EVENT_PAPER_OUT : EVENT_PAPER_IN);
+            }
+        }
+        return this;
+    }
+
+    public PrinterSimulator setPaperOutStatus(int paperOutStatus) {
+        mPaperOutStatus = paperOutStatus;
+        return this;
+    }
+
+    /**
+     * Faz as próximas conexões responderem no protocolo do ProtocolAdapter em vez do modo raw
+     *
+     * @param protocol
+     * @return this
+     */
+    public PrinterSimulator setProtocol(boolean protocol) {
+        mProtocol = protocol;
+        return this;
+    }
+
+    /**
+     * Faz as próximas conexões falharem, como uma impressora desligada ou fora de alcance
+     *
+     * @param failConnect
+     * @return this
+     */
+    public PrinterSimulator setFailConnect(boolean failConnect) {
+        mFailConnect = failConnect;
+        return this;
+    }
+
+    /**
+     * Derruba a conexão depois de receber bytes bytes nela; -1 desativa
+     *
+     * @param bytes
+     * @return this
+     */
+    public PrinterSimulator setDisconnectAfter(long bytes) {
+        mDisconnectAfter = bytes;
+        return this;
+    }
+
+    /**
+     * Derruba as conexões atuais, como impressoras que saíram do alcance
+     */
+    public void disconnect() {
+        for (SimulatedSocket socket : new ArrayList<SimulatedSocket>(mSockets.values())) {
+            socket.drop();
+        }
+    }
+
+    /**
+     * Derruba a conexão com o endereço informado
+     *
+     * @param address
+     */
+    public void disconnect(String address) {
+        SimulatedSocket socket = mSockets.get(address);
+        if (socket != null) {
+            socket.drop();
+        }
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    /**
+     * @return quantidade de escritas recebidas, como chamadas ao socket
+     */
+    public long getWrites() {
+        return mWrites.get();
+    }
+
+    /**
+     * @return quantidade de quebras de linha recebidas
+     */
+    public long getLines() {
+        return mLines.get();
+    }
+
+    public long getQueries() {
+        return mQueries.get();
+    }
+
+    public long getConnects() {
+        return mConnects.get();
+    }
+
+    @Override
+    public PrinterSocket connect(String address) throws IOException {
+        sleep(mConnectDelay);
+        if (mFailConnect) {
+            throw new IOException("Simulated printer " + address + " not reachable");
+        }
+        SimulatedSocket socket = new SimulatedSocket(address);
+        SimulatedSocket previous = mSockets.put(address, socket);
+        if (previous != null) {
+            previous.drop();
+        }
+        mConnects.incrementAndGet();
+        return socket;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private class SimulatedSocket implements PrinterSocket {
+        private final String mAddress;
+        private final boolean mFramed = mProtocol;
+        private final ResponseStream mInput = new ResponseStream();
+        // no modo protocolo, respostas da impressora aguardando um pedido do canal
+        private final ResponseStream mPrinterOutput = new ResponseStream();
+        private final CommandStream mOutput = new CommandStream();
+        private volatile boolean mConnected = true;
+        private long mReceived;
+
+        SimulatedSocket(String address) {
+            mAddress = address;
+        }
+
+        void sendEvent(int event) {
+            if (mFramed && mConnected) {
+                mInput.respond(new byte[] { CHANNEL_PRINTER, 0, (byte) (event >> 8), (byte) event }, 0);
+            }
+        }
+
+        void drop() {
+            mConnected = false;
+            mInput.shutdown();
+            mSockets.remove(mAddress, this);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return mInput;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return mOutput;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public void close() {
+            drop();
+        }
+
+        /**
+         * Recebe os comandos, no ritmo da serial simulada
+         */
+        private class CommandStream extends OutputStream {
+            private final byte[] mHeader = new byte[HEADER_SIZE];
+            private int mHeaderCount;
+            private int mPayload;
+            private int mPrevious = -1;
+            private long mDeadline;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) throws IOException {
+                if (!mConnected) {
+                    throw new IOException("Broken pipe");
+                }
+                long limit = mDisconnectAfter;
+                if (limit >= 0 && mReceived + len > limit) {
+                    drop();
+                    throw new IOException("Connection reset");
+                }
+                pace(len);
+                mReceived += len;
+                mBytesReceived.addAndGet(len);
+                mWrites.incrementAndGet();
+                if (mFramed) {
+                    readPackets(b, off, len);
+                } else {
+                    print(b, off, len, mInput);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (!mConnected) {
+                    throw new IOException("Broken pipe");
+                }
+            }
+
+            /**
+             * Dados que chegam à impressora; as respostas às consultas vão para responses
+             */
+            private void print(byte[] b, int off, int len, ResponseStream responses) {
+                for (int i = off; i < off + len; i++) {
+                    int c = b[i] & 0xFF;
+                    if (c == 10) {
+                        mLines.incrementAndGet();
+                    } else if (mPrevious == 27 && c == 'v') {
+                        mQueries.incrementAndGet();
+                        responses.respond(new byte[] { (byte) (mPaperOut ? mStatus | mPaperOutStatus : mStatus) }, mLatency);
+                    } else if (mPrevious == 27 && c == '`') {
+                        mQueries.incrementAndGet();
+                        int temperature = mTemperature;
+                        // Printer.getTemperature lê o segundo byte menos 32
+                        responses.respond(new byte[] { 0, (byte) (temperature + 32) }, mLatency);
+                    }
+                    mPrevious = c;
+                }
+            }
+
+            /**
+             * Separa os pacotes do ProtocolAdapter; os dados de um envio vão à impressora
+             * conforme chegam
+             */
+            private void readPackets(byte[] b, int off, int len) {
+                int end = off + len;
+                while (off < end) {
+                    if (mHeaderCount < HEADER_SIZE) {
+                        mHeader[mHeaderCount++] = b[off++];
+                        if (mHeaderCount == HEADER_SIZE) {
+                            mPayload = (mHeader[2] & 0xFF) << 8 | mHeader[3] & 0xFF;
+                        }
+                    } else {
+                        int count = Math.min(mPayload, end - off);
+                        if (mHeader[1] == COMMAND_SEND) {
+                            print(b, off, count, mPrinterOutput);
+                        }
+                        off += count;
+                        mPayload -= count;
+                    }
+                    if (mHeaderCount == HEADER_SIZE && mPayload == 0) {
+                        mHeaderCount = 0;
+                        reply(mHeader[0] & 0xFF, mHeader[1] & 0xFF);
+                    }
+                }
+            }
+
+            /**
+             * Confirma o pacote com o status da impressora; um pedido leva as respostas prontas
+             */
+            private void reply(int channel, int command) {
+                int status = mPaperOut ? STATUS_NO_PAPER : 0;
+                byte[] data = null;
+                if (command == COMMAND_REQUEST) {
+                    data = mPrinterOutput.poll(MAX_REPLY_DATA);
+                } else if (command == COMMAND_GETSTATUS) {
+                    data = new byte[] { (byte) status };
+                }
+                int length = data == null ? 0 : data.length;
+                byte[] packet = new byte[HEADER_SIZE + length];
+                packet[0] = (byte) (channel | REPLY_FLAG);
+                packet[1] = (byte) status;
+                packet[3] = (byte) length;
+                if (length > 0) {
+                    System.arraycopy(data, 0, packet, HEADER_SIZE, length);
+                }
+                mInput.respond(packet, 0);
+            }
+
+            /**
+             * Espera o tempo que len bytes levariam na serial simulada
+             */
+            private void pace(int len) throws IOException {
+                int baudRate = mBaudRate;
+                if (baudRate <= 0) {
+                    return;
+                }
+                long now = System.nanoTime();
+                mDeadline = Math.max(mDeadline, now) + len * 10L * 1000000000L / baudRate;
+                long wait = (mDeadline - now) / 1000000;
+                sleep(wait);
+            }
+        }
+
+        /**
+         * Respostas da impressora, liberadas depois da latência configurada
+         */
+        private class ResponseStream extends InputStream {
+            private byte[] mBuffer = new byte[64];
+            private long[] mReadyAt = new long[64];
+            private int mHead;
+            private int mCount;
+            private boolean mClosed;
+
+            synchronized void respond(byte[] data, long latency) {
+                long readyAt = System.currentTimeMillis() + latency;
+                for (byte b : data) {
+                    if (mCount == mBuffer.length) {
+                        grow();
+                    }
+                    int tail = (mHead + mCount) % mBuffer.length;
+                    mBuffer[tail] = b;
+                    mReadyAt[tail] = readyAt;
+                    mCount++;
+                }
+                notifyAll();
+            }
+
+            /**
+             * Respostas já liberadas, até max bytes, sem esperar
+             */
+            synchronized byte[] poll(int max) {
+                long now = System.currentTimeMillis();
+                int count = 0;
+                while (count < Math.min(max, mCount) && mReadyAt[(mHead + count) % mBuffer.length] <= now) {
+                    count++;
+                }
+                byte[] data = new byte[count];
+                for (int i = 0; i < count; i++) {
+                    data[i] = mBuffer[mHead];
+                    mHead = (mHead + 1) % mBuffer.length;
+                    mCount--;
+                }
+                return data;
+            }
+
+            synchronized void shutdown() {
+                mClosed = true;
+                notifyAll();
+            }
+
+            @Override
+            public void close() {
+                shutdown();
+            }
+
+            @Override
+            public synchronized int read() throws IOException {
+                while (true) {
+                    if (mClosed) {
+                        return -1;
+                    }
+                    long wait = mCount == 0 ? 0 : mReadyAt[mHead] - System.currentTimeMillis();
+                    if (mCount > 0 && wait <= 0) {
+                        int b = mBuffer[mHead] & 0xFF;
+                        mHead = (mHead + 1) % mBuffer.length;
+                        mCount--;
+                        return b;
+                    }
+                    try {
+                        wait(Math.max(wait, 0));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int first = read();
+                if (first < 0) {
+                    return -1;
+                }
+                b[off] = (byte) first;
+                int read = 1;
+                synchronized (this) {
+                    long now = System.currentTimeMillis();
+                    while (read < len && mCount > 0 && mReadyAt[mHead] <= now) {
+                        b[off + read++] = mBuffer[mHead];
+                        mHead = (mHead + 1) % mBuffer.length;
+                        mCount--;
+                    }
+                }
+                return read;
+            }
+
+            @Override
+            public synchronized int available() {
+                long now = System.currentTimeMillis();
+                int available = 0;
+                while (available < mCount && mReadyAt[(mHead + available) % mBuffer.length] <= now) {
+                    available++;
+                }
+                return available;
+            }
+
+            private void grow() {
+                byte[] buffer = new byte[mBuffer.length * 2];
+                long[] readyAt = new long[buffer.length];
+                for (int i = 0; i < mCount; i++) {
+                    buffer[i] = mBuffer[(mHead + i) % mBuffer.length];
+                    readyAt[i] = mReadyAt[(mHead + i) % mBuffer.length];
+                }
+                mBuffer = buffer;
+                mReadyAt = readyAt;
+                mHead = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Abre a conexão física com a impressora a partir do seu endereço
+ */
+public interface PrinterSocketFactory {
+    /**
+     * Conexão aberta com a impressora
+     */
+    interface PrinterSocket {
+        InputStream getInputStream() throws IOException;
+
+        OutputStream getOutputStream() throws IOException;
+
+        boolean isConnected();
+
+        void close() throws IOException;
+    }
+
+    /**
+     * Conecta à impressora, bloqueando até a conexão estar pronta
+     *
+     * @param address
+     * @return PrinterSocket
+     * @throws IOException
+     */
+    PrinterSocket connect(String address) throws IOException;
+}
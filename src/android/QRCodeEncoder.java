@@ -0,0 +1,491 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.util.Arrays;
+
+/**
+ * Gerador de QR Code (modo byte, versões 1 a 40) para impressoras sem o comando nativo
+ */
+public class QRCodeEncoder {
+    public static final int ECC_LOW = 1;
+    public static final int ECC_MEDIUM = 2;
+    public static final int ECC_QUARTILE = 3;
+    public static final int ECC_HIGH = 4;
+
+    public static final int QUIET_ZONE = 4;
+
+    private static final int MAX_VERSION = 40;
+
+    /**
+     * Bits de nível de correção no formato, na ordem L, M, Q, H
+     */
+    private static final int[] FORMAT_BITS = { 1, 0, 3, 2 };
+
+    private static final int[][] ECC_CODEWORDS_PER_BLOCK = {
+            { -1, 7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28, 28, 28, 30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 },
+            { -1, 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26, 26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28 },
+            { -1, 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30, 28, 30, 30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 },
+            { -1, 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28, 30, 24, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30 }
+    };
+
+    private static final int[][] ERROR_CORRECTION_BLOCKS = {
+            { -1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 4, 4, 4, 4, 4, 6, 6, 6, 6, 7, 8, 8, 9, 9, 10, 12, 12, 12, 13, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25 },
+            { -1, 1, 1, 1, 2, 2, 4, 4, 4, 5, 5, 5, 8, 9, 9, 10, 10, 11, 13, 14, 16, 17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49 },
+            { -1, 1, 1, 2, 2, 4, 4, 6, 6, 8, 8, 8, 10, 12, 16, 12, 17, 16, 18, 21, 20, 23, 23, 25, 27, 29, 34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68 },
+            { -1, 1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25, 25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81 }
+    };
+
+    private final int mVersion;
+    private final int mSize;
+    private final int mEcc;
+    private final boolean[][] mModules;
+    private final boolean[][] mFunction;
+    private int mMask;
+
+    private QRCodeEncoder(int version, int ecc) {
+        mVersion = version;
+        mEcc = ecc;
+        mSize = version * 4 + 17;
+        mModules = new boolean[mSize][mSize];
+        mFunction = new boolean[mSize][mSize];
+    }
+
+    /**
+     * Gera o QR Code dos dados
+     *
+     * @param data
+     * @param ecc ECC_LOW, ECC_MEDIUM, ECC_QUARTILE ou ECC_HIGH
+     * @return QRCodeEncoder
+     * @throws IllegalArgumentException se os dados não couberem na versão 40
+     */
+    public static QRCodeEncoder encode(byte[] data, int ecc) {
+        if (ecc < ECC_LOW || ecc > ECC_HIGH) {
+            throw new IllegalArgumentException("The error correction level is illegal");
+        }
+        int level = ecc - 1;
+        int version = 1;
+        while (version <= MAX_VERSION && bitsNeeded(data.length, version) > dataCodewords(version, level) * 8) {
+            version++;
+        }
+        if (version > MAX_VERSION) {
+            throw new IllegalArgumentException("The data is too long for a QR code");
+        }
+
+        QRCodeEncoder qr = new QRCodeEncoder(version, level);
+        byte[] codewords = qr.interleave(qr.dataCodewords(data));
+        qr.drawFunctionPatterns();
+        qr.drawCodewords(codewords);
+        qr.applyBestMask();
+        return qr;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Quantidade de módulos por lado, sem a zona de silêncio
+     *
+     * @return int
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    public int getMask() {
+        return mMask;
+    }
+
+    public boolean isDark(int x, int y) {
+        return mModules[y][x];
+    }
+
+    /**
+     * Rasteriza a matriz, com a zona de silêncio de 4 módulos
+     *
+     * @param moduleSize pontos por módulo
+     * @return MonochromeImage
+     */
+    public MonochromeImage toImage(int moduleSize) {
+        if (moduleSize < 1) {
+            throw new IllegalArgumentException("The module size is illegal");
+        }
+        int width = (mSize + QUIET_ZONE * 2) * moduleSize;
+        int bytesPerRow = MonochromeImage.bytesPerRow(width);
+        byte[] data = new byte[bytesPerRow * width];
+        byte[] row = new byte[bytesPerRow];
+        for (int y = 0; y < mSize; y++) {
+            Arrays.fill(row, (byte) 0);
+            for (int x = 0; x < mSize; x++) {
+                if (!mModules[y][x]) {
+                    continue;
+                }
+                int left = (x + QUIET_ZONE) * moduleSize;
+                for (int px = left; px < left + moduleSize; px++) {
+                    row[px >> 3] |= 0x80 >> (px & 7);
+                }
+            }
+            int top = (y + QUIET_ZONE) * moduleSize;
+            for (int dy = 0; dy < moduleSize; dy++) {
+                System.arraycopy(row, 0, data, (top + dy) * bytesPerRow, bytesPerRow);
+            }
+        }
+        return new MonochromeImage(width, width, data);
+    }
+
+    private static int bitsNeeded(int length, int version) {
+        return 4 + (version < 10 ? 8 : 16) + length * 8;
+    }
+
+    private static int rawDataModules(int version) {
+        int result = (16 * version + 128) * version + 64;
+        if (version >= 2) {
+            int alignments = version / 7 + 2;
+            result -= (25 * alignments - 10) * alignments - 55;
+            if (version >= 7) {
+                result -= 36;
+            }
+        }
+        return result;
+    }
+
+    private static int dataCodewords(int version, int level) {
+        return rawDataModules(version) / 8
+                - ECC_CODEWORDS_PER_BLOCK[level][version] * ERROR_CORRECTION_BLOCKS[level][version];
+    }
+
+    /**
+     * Modo byte, contagem, dados, terminador e bytes de preenchimento
+     */
+    private byte[] dataCodewords(byte[] data) {
+        int capacity = dataCodewords(mVersion, mEcc);
+        byte[] result = new byte[capacity];
+        int bit = 0;
+        bit = appendBits(result, bit, 4, 4);
+        bit = appendBits(result, bit, data.length, mVersion < 10 ? 8 : 16);
+        for (byte b : data) {
+            bit = appendBits(result, bit, b & 0xFF, 8);
+        }
+        bit += Math.min(4, capacity * 8 - bit);
+        int index = (bit + 7) >> 3;
+        for (int pad = 0xEC; index < capacity; index++, pad ^= 0xEC ^ 0x11) {
+            result[index] = (byte) pad;
+        }
+        return result;
+    }
+
+    private static int appendBits(byte[] target, int bit, int value, int length) {
+        for (int i = length - 1; i >= 0; i--, bit++) {
+            if (((value >>> i) & 1) != 0) {
+                target[bit >> 3] |= 0x80 >> (bit & 7);
+            }
+        }
+        return bit;
+    }
+
+    /**
+     * Divide em blocos, calcula a correção de cada um e intercala os codewords
+     */
+    private byte[] interleave(byte[] data) {
+        int blocks = ERROR_CORRECTION_BLOCKS[mEcc][mVersion];
+        int eccLength = ECC_CODEWORDS_PER_BLOCK[mEcc][mVersion];
+        int rawCodewords = rawDataModules(mVersion) / 8;
+        int shortBlocks = blocks - rawCodewords % blocks;
+        int shortBlockLength = rawCodewords / blocks;
+        byte[] divisor = reedSolomonDivisor(eccLength);
+
+        byte[][] dataBlocks = new byte[blocks][];
+        byte[][] eccBlocks = new byte[blocks][];
+        for (int i = 0, offset = 0; i < blocks; i++) {
+            int length = shortBlockLength - eccLength + (i < shortBlocks ? 0 : 1);
+            dataBlocks[i] = Arrays.copyOfRange(data, offset, offset + length);
+            eccBlocks[i] = reedSolomonRemainder(dataBlocks[i], divisor);
+            offset += length;
+        }
+
+        byte[] result = new byte[rawCodewords];
+        int index = 0;
+        for (int i = 0; i <= shortBlockLength - eccLength; i++) {
+            for (int j = 0; j < blocks; j++) {
+                if (i < dataBlocks[j].length) {
+                    result[index++] = dataBlocks[j][i];
+                }
+            }
+        }
+        for (int i = 0; i < eccLength; i++) {
+            for (int j = 0; j < blocks; j++) {
+                result[index++] = eccBlocks[j][i];
+            }
+        }
+        return result;
+    }
+
+    private static byte[] reedSolomonDivisor(int degree) {
+        byte[] result = new byte[degree];
+        result[degree - 1] = 1;
+        int root = 1;
+        for (int i = 0; i < degree; i++) {
+            for (int j = 0; j < degree; j++) {
+                result[j] = (byte) multiply(result[j] & 0xFF, root);
+                if (j + 1 < degree) {
+                    result[j] ^= result[j + 1];
+                }
+            }
+            root = multiply(root, 0x02);
+        }
+        return result;
+    }
+
+    private static byte[] reedSolomonRemainder(byte[] data, byte[] divisor) {
+        byte[] result = new byte[divisor.length];
+        for (byte b : data) {
+            int factor = (b ^ result[0]) & 0xFF;
+            System.arraycopy(result, 1, result, 0, result.length - 1);
+            result[result.length - 1] = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] ^= multiply(divisor[i] & 0xFF, factor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiplicação em GF(2^8) com o polinômio 0x11D
+     */
+    private static int multiply(int x, int y) {
+        int z = 0;
+        for (int i = 7; i >= 0; i--) {
+            z = (z << 1) ^ ((z >>> 7) * 0x11D);
+            z ^= ((y >>> i) & 1) * x;
+        }
+        return z;
+    }
+
+    private void drawFunctionPatterns() {
+        for (int i = 0; i < mSize; i++) {
+            setFunction(6, i, i % 2 == 0);
+            setFunction(i, 6, i % 2 == 0);
+        }
+        drawFinder(3, 3);
+        drawFinder(mSize - 4, 3);
+        drawFinder(3, mSize - 4);
+
+        int[] positions = alignmentPositions();
+        int last = positions.length - 1;
+        for (int i = 0; i < positions.length; i++) {
+            for (int j = 0; j < positions.length; j++) {
+                if ((i == 0 && j == 0) || (i == 0 && j == last) || (i == last && j == 0)) {
+                    continue;
+                }
+                drawAlignment(positions[i], positions[j]);
+            }
+        }
+
+        drawFormatBits(0);
+        drawVersion();
+    }
+
+    private void drawFinder(int x, int y) {
+        for (int dy = -4; dy <= 4; dy++) {
+            for (int dx = -4; dx <= 4; dx++) {
+                int distance = Math.max(Math.abs(dx), Math.abs(dy));
+                int xx = x + dx;
+                int yy = y + dy;
+                if (xx >= 0 && xx < mSize && yy >= 0 && yy < mSize) {
+                    setFunction(xx, yy, distance != 2 && distance != 4);
+                }
+            }
+        }
+    }
+
+    private void drawAlignment(int x, int y) {
+        for (int dy = -2; dy <= 2; dy++) {
+            for (int dx = -2; dx <= 2; dx++) {
+                setFunction(x + dx, y + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+            }
+        }
+    }
+
+    private int[] alignmentPositions() {
+        if (mVersion == 1) {
+            return new int[0];
+        }
+        int count = mVersion / 7 + 2;
+        int step = mVersion == 32 ? 26 : (mVersion * 4 + count * 2 + 1) / (count * 2 - 2) * 2;
+        int[] result = new int[count];
+        result[0] = 6;
+        for (int i = count - 1, position = mSize - 7; i >= 1; i--, position -= step) {
+            result[i] = position;
+        }
+        return result;
+    }
+
+    private void drawFormatBits(int mask) {
+        int data = FORMAT_BITS[mEcc] << 3 | mask;
+        int remainder = data;
+        for (int i = 0; i < 10; i++) {
+            remainder = (remainder << 1) ^ ((remainder >>> 9) * 0x537);
+        }
+        int bits = (data << 10 | remainder) ^ 0x5412;
+
+        for (int i = 0; i <= 5; i++) {
+            setFunction(8, i, bit(bits, i));
+        }
+        setFunction(8, 7, bit(bits, 6));
+        setFunction(8, 8, bit(bits, 7));
+        setFunction(7, 8, bit(bits, 8));
+        for (int i = 9; i < 15; i++) {
+            setFunction(14 - i, 8, bit(bits, i));
+        }
+
+        for (int i = 0; i < 8; i++) {
+            setFunction(mSize - 1 - i, 8, bit(bits, i));
+        }
+        for (int i = 8; i < 15; i++) {
+            setFunction(8, mSize - 15 + i, bit(bits, i));
+        }
+        setFunction(8, mSize - 8, true);
+    }
+
+    private void drawVersion() {
+        if (mVersion < 7) {
+            return;
+        }
+        int remainder = mVersion;
+        for (int i = 0; i < 12; i++) {
+            remainder = (remainder << 1) ^ ((remainder >>> 11) * 0x1F25);
+        }
+        int bits = mVersion << 12 | remainder;
+        for (int i = 0; i < 18; i++) {
+            boolean dark = bit(bits, i);
+            int a = mSize - 11 + i % 3;
+            int b = i / 3;
+            setFunction(a, b, dark);
+            setFunction(b, a, dark);
+        }
+    }
+
+    /**
+     * Posiciona os codewords em zigue-zague, de baixo para cima, duas colunas por vez
+     */
+    private void drawCodewords(byte[] codewords) {
+        int i = 0;
+        int total = codewords.length * 8;
+        for (int right = mSize - 1; right >= 1; right -= 2) {
+            if (right == 6) {
+                right = 5;
+            }
+            boolean upward = ((right + 1) & 2) == 0;
+            for (int vertical = 0; vertical < mSize; vertical++) {
+                int y = upward ? mSize - 1 - vertical : vertical;
+                for (int j = 0; j < 2; j++) {
+                    int x = right - j;
+                    if (!mFunction[y][x] && i < total) {
+                        mModules[y][x] = ((codewords[i >> 3] >>> (7 - (i & 7))) & 1) != 0;
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void applyBestMask() {
+        int best = 0;
+        int bestPenalty = Integer.MAX_VALUE;
+        for (int mask = 0; mask < 8; mask++) {
+            applyMask(mask);
+            drawFormatBits(mask);
+            int penalty = penalty();
+            if (penalty < bestPenalty) {
+                best = mask;
+                bestPenalty = penalty;
+            }
+            applyMask(mask);
+        }
+        mMask = best;
+        applyMask(best);
+        drawFormatBits(best);
+    }
+
+    private void applyMask(int mask) {
+        for (int y = 0; y < mSize; y++) {
+            for (int x = 0; x < mSize; x++) {
+                if (mFunction[y][x]) {
+                    continue;
+                }
+                boolean invert;
+                switch (mask) {
+                    case 0: invert = (x + y) % 2 == 0; break;
+                    case 1: invert = y % 2 == 0; break;
+                    case 2: invert = x % 3 == 0; break;
+                    case 3: invert = (x + y) % 3 == 0; break;
+                    case 4: invert = (x / 3 + y / 2) % 2 == 0; break;
+                    case 5: invert = x * y % 2 + x * y % 3 == 0; break;
+                    case 6: invert = (x * y % 2 + x * y % 3) % 2 == 0; break;
+                    default: invert = ((x + y) % 2 + x * y % 3) % 2 == 0; break;
+                }
+                mModules[y][x] ^= invert;
+            }
+        }
+    }
+
+    /**
+     * Penalidade da máscara: sequências longas, blocos 2x2, padrões parecidos com o localizador
+     * e desequilíbrio entre módulos escuros e claros
+     */
+    private int penalty() {
+        int result = 0;
+        int dark = 0;
+        for (int a = 0; a < mSize; a++) {
+            result += linePenalty(a, true) + linePenalty(a, false);
+            for (int b = 0; b < mSize; b++) {
+                if (mModules[a][b]) {
+                    dark++;
+                }
+                if (a + 1 < mSize && b + 1 < mSize) {
+                    boolean color = mModules[a][b];
+                    if (color == mModules[a][b + 1] && color == mModules[a + 1][b] && color == mModules[a + 1][b + 1]) {
+                        result += 3;
+                    }
+                }
+            }
+        }
+        int total = mSize * mSize;
+        int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+        return result + k * 10;
+    }
+
+    private int linePenalty(int line, boolean row) {
+        int result = 0;
+        int run = 0;
+        boolean previous = false;
+        int pattern = 0;
+        for (int i = 0; i < mSize; i++) {
+            boolean dark = row ? mModules[line][i] : mModules[i][line];
+            if (i > 0 && dark == previous) {
+                run++;
+                if (run == 5) {
+                    result += 3;
+                } else if (run > 5) {
+                    result++;
+                }
+            } else {
+                run = 1;
+                previous = dark;
+            }
+            pattern = ((pattern << 1) | (dark ? 1 : 0)) & 0x7FF;
+            if (i >= 10 && (pattern == 0x5D0 || pattern == 0x05D)) {
+                result += 40;
+            }
+        }
+        return result;
+    }
+
+    private void setFunction(int x, int y, boolean dark) {
+        mModules[y][x] = dark;
+        mFunction[y][x] = true;
+    }
+
+    private static boolean bit(int value, int index) {
+        return ((value >>> index) & 1) != 0;
+    }
+}
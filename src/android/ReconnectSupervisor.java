@@ -0,0 +1,201 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconecta à impressora após uma queda, com backoff exponencial e jitter
+ */
+public class ReconnectSupervisor {
+    public static final long DEFAULT_BASE_DELAY = 500;
+    public static final long DEFAULT_MAX_DELAY = 30000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    public interface Target {
+        /**
+         * Tenta restabelecer a conexão, bloqueando até conseguir ou falhar
+         *
+         * @throws IOException
+         */
+        void reconnect() throws IOException;
+
+        void onReconnected(int attempts, long elapsed);
+
+        void onGaveUp(IOException lastError);
+    }
+
+    private final Target mTarget;
+    private final Random mRandom = new Random();
+    private final String mName;
+    private ScheduledExecutorService mScheduler;
+    private ScheduledFuture<?> mPending;
+    private long mBaseDelay = DEFAULT_BASE_DELAY;
+    private long mMaxDelay = DEFAULT_MAX_DELAY;
+    private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private boolean mActive;
+    private int mAttempt;
+    private long mLostAt;
+
+    private long mTotalAttempts;
+    private long mRecoveries;
+    private long mFailures;
+    private long mLastRecoveryTime;
+    private long mReplayedJobs;
+
+    public ReconnectSupervisor(Target target, String name) {
+        mTarget = target;
+        mName = name;
+    }
+
+    public synchronized void configure(int maxAttempts, long baseDelay, long maxDelay) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+    }
+
+    /**
+     * Inicia as tentativas de reconexão, se ainda não estiverem em andamento
+     */
+    public synchronized void start() {
+        if (mActive) {
+            return;
+        }
+        mActive = true;
+        mAttempt = 0;
+        mLostAt = System.currentTimeMillis();
+        scheduleNext();
+    }
+
+    /**
+     * Interrompe as tentativas, por exemplo quando o usuário desconecta ou troca de impressora
+     */
+    public synchronized void cancel() {
+        mActive = false;
+        if (mPending != null) {
+            mPending.cancel(true);
+            mPending = null;
+        }
+    }
+
+    /**
+     * Interrompe as tentativas e encerra a thread do agendador; chamado quando a impressora
+     * sai do pool
+     */
+    public synchronized void shutdown() {
+        cancel();
+        if (mScheduler != null) {
+            mScheduler.shutdownNow();
+            mScheduler = null;
+        }
+    }
+
+    public synchronized boolean isActive() {
+        return mActive;
+    }
+
+    public synchronized void addReplayedJobs(int count) {
+        mReplayedJobs += count;
+    }
+
+    public synchronized long getTotalAttempts() {
+        return mTotalAttempts;
+    }
+
+    public synchronized long getRecoveries() {
+        return mRecoveries;
+    }
+
+    public synchronized long getFailures() {
+        return mFailures;
+    }
+
+    public synchronized long getLastRecoveryTime() {
+        return mLastRecoveryTime;
+    }
+
+    public synchronized long getReplayedJobs() {
+        return mReplayedJobs;
+    }
+
+    long nextDelay(int attempt) {
+        long delay = mMaxDelay;
+        if (attempt < 30) {
+            delay = Math.min(mMaxDelay, mBaseDelay << attempt);
+        }
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half));
+    }
+
+    private void scheduleNext() {
+        mPending = scheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt();
+            }
+        }, nextDelay(mAttempt), TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt() {
+        synchronized (this) {
+            if (!mActive) {
+                return;
+            }
+            mAttempt++;
+            mTotalAttempts++;
+        }
+
+        IOException error = null;
+        try {
+            mTarget.reconnect();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        int attempts;
+        long elapsed;
+        synchronized (this) {
+            if (!mActive) {
+                return;
+            }
+            attempts = mAttempt;
+            elapsed = System.currentTimeMillis() - mLostAt;
+            if (error == null) {
+                mActive = false;
+                mPending = null;
+                mRecoveries++;
+                mLastRecoveryTime = elapsed;
+            } else if (mAttempt >= mMaxAttempts) {
+                mActive = false;
+                mPending = null;
+                mFailures++;
+            } else {
+                scheduleNext();
+                return;
+            }
+        }
+        if (error == null) {
+            mTarget.onReconnected(attempts, elapsed);
+        } else {
+            mTarget.onGaveUp(error);
+        }
+    }
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (mScheduler == null) {
+            mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, mName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mScheduler;
+    }
+}
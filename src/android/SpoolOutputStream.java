@@ -0,0 +1,177 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import android.util.Log;
+
+/**
+ * Stream da impressora que registra no PrintJournal tudo o que é enviado durante um job
+ */
+public class SpoolOutputStream extends FilterOutputStream {
+    private static final String LOG_TAG = "BluetoothPrinter";
+    private static final int MAX_SEGMENT = 64 * 1024;
+
+    private final PrintJournal mJournal;
+    private byte[] mBuffer = new byte[4096];
+    private int mCount;
+    private boolean mCapturing;
+    private boolean mCapturePending;
+    private long mReplayed;
+
+    public SpoolOutputStream(OutputStream out, PrintJournal journal) {
+        super(out);
+        mJournal = journal;
+    }
+
+    public PrintJournal getJournal() {
+        return mJournal;
+    }
+
+    /**
+     * Passa a registrar no diário o que for escrito, até endCapture
+     */
+    public synchronized void beginCapture() {
+        mCapturing = true;
+        mCapturePending = false;
+    }
+
+    /**
+     * Registra e envia o que o job escreveu sem flush, e volta a escrever direto na impressora
+     *
+     * @throws IOException se o envio falhar; o trecho fica pendente no diário
+     */
+    public synchronized void endCapture() throws IOException {
+        try {
+            if (mCount > 0) {
+                commit();
+            }
+        } finally {
+            mCapturing = false;
+        }
+    }
+
+    /**
+     * Encerra a captura depois de uma falha, descartando o que não chegou a ser registrado
+     */
+    public synchronized void abortCapture() {
+        mCount = 0;
+        mCapturing = false;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (!mCapturing) {
+            if (mCount > 0) {
+                commit();
+            }
+            out.write(b, off, len);
+            return;
+        }
+        if (mCount + len > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mCount + len));
+        }
+        System.arraycopy(b, off, mBuffer, mCount, len);
+        mCount += len;
+        // imagens grandes seguem em trechos, sem esperar o flush do job
+        if (mCount >= MAX_SEGMENT) {
+            commit();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (mCount > 0) {
+            commit();
+        } else {
+            out.flush();
+        }
+    }
+
+    /**
+     * Guarda no diário o que não chegou a ser enviado e fecha a impressora
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mCount > 0) {
+            try {
+                mJournal.append(mBuffer, 0, mCount);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Falha ao gravar o spool: " + e.getMessage());
+            }
+            mCount = 0;
+        }
+        out.close();
+    }
+
+    /**
+     * Reenvia, na ordem original, os trechos que ficaram pendentes no diário
+     *
+     * @return quantidade de trechos reenviados
+     * @throws IOException
+     */
+    public synchronized int replay() throws IOException {
+        int replayed = 0;
+        for (long id : mJournal.getPending()) {
+            byte[] data = mJournal.read(id);
+            if (data == null) {
+                continue;
+            }
+            out.write(data);
+            out.flush();
+            mJournal.done(id);
+            replayed++;
+        }
+        mReplayed += replayed;
+        return replayed;
+    }
+
+    public synchronized long getReplayed() {
+        return mReplayed;
+    }
+
+    /**
+     * @return true se um envio da captura atual falhou e ficou pendente no diário
+     */
+    public synchronized boolean isCapturePending() {
+        return mCapturePending;
+    }
+
+    /**
+     * Registra o conteúdo em memória, envia e marca como impresso
+     */
+    private void commit() throws IOException {
+        long id = -1;
+        try {
+            id = mJournal.append(mBuffer, 0, mCount);
+        } catch (IOException e) {
+            // sem diário o job ainda é impresso, só não sobrevive a uma queda
+            Log.e(LOG_TAG, "Falha ao gravar o spool: " + e.getMessage());
+        }
+        int count = mCount;
+        mCount = 0;
+        try {
+            out.write(mBuffer, 0, count);
+            out.flush();
+        } catch (IOException e) {
+            if (id >= 0 && mCapturing) {
+                mCapturePending = true;
+            }
+            throw e;
+        }
+        if (id >= 0) {
+            try {
+                mJournal.done(id);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Falha ao gravar o spool: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.giorgiofellipe.datecsprinter;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Converte texto com tags de formatação em comandos da impressora, num charset escolhido
+ */
+public class TextEncoder {
+    private static final int MAX_TAG_LENGTH = 6;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Charset mCharset;
+    private final CharsetEncoder mEncoder;
+    private final boolean mAscii;
+    private ByteBuffer mBuffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private char[] mChars = new char[INITIAL_CAPACITY];
+    private CharBuffer mCharBuffer = CharBuffer.wrap(mChars);
+    private int mMode;
+    private boolean mItalic;
+    private int mAlign;
+
+    public TextEncoder() {
+        this(Charset.defaultCharset());
+    }
+
+    public TextEncoder(Charset charset) {
+        mCharset = charset;
+        mEncoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        mAscii = isAsciiCompatible(charset);
+    }
+
+    /**
+     * Charsets em que os caracteres abaixo de 0x80 são o próprio byte, copiados sem o encoder
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        byte[] probe = "{az AZ 09~}".getBytes(charset);
+        if (probe.length != 11) {
+            return false;
+        }
+        for (int i = 0; i < probe.length; i++) {
+            if (probe[i] != "{az AZ 09~}".charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Charset getCharset() {
+        return mCharset;
+    }
+
+    /**
+     * Descarta o conteúdo; o estilo das tags já abertas é mantido
+     *
+     * @return this
+     */
+    public TextEncoder clear() {
+        mBuffer.clear();
+        return this;
+    }
+
+    /**
+     * Converte o texto e suas tags, precedido do mesmo reset de estilo de printTaggedText
+     *
+     * @param text
+     * @return this
+     */
+    public TextEncoder appendTagged(String text) {
+        appendCommand(27, 33, 0, 27, 73, 0);
+        mMode = 0;
+        mItalic = false;
+        return appendTags(text);
+    }
+
+    /**
+     * Repete o estilo atual (ESC !, itálico e alinhamento), para continuar um texto depois de
+     * um reset da impressora
+     *
+     * @return this
+     */
+    public TextEncoder appendState() {
+        return appendCommand(27, 33, mMode, 27, 73, mItalic ? 1 : 0, 27, 97, mAlign);
+    }
+
+    /**
+     * Converte o texto e suas tags continuando o estilo atual, sem o reset inicial
+     *
+     * @param text
+     * @return this
+     */
+    public TextEncoder appendTags(String text) {
+        int length = text.length();
+        if (mChars.length < length) {
+            mChars = new char[Math.max(length, mChars.length * 2)];
+            mCharBuffer = CharBuffer.wrap(mChars);
+        }
+        char[] chars = mChars;
+        text.getChars(0, length, chars, 0);
+
+        int runStart = 0;
+        int i = 0;
+        while (i < length) {
+            if (chars[i] == '{') {
+                int end = i + 1;
+                int limit = Math.min(length, i + MAX_TAG_LENGTH + 2);
+                while (end < limit && chars[end] != '}' && chars[end] != '{') {
+                    end++;
+                }
+                if (end < limit && chars[end] == '}') {
+                    encode(runStart, i);
+                    if (appendTag(chars, i + 1, end)) {
+                        i = end + 1;
+                        runStart = i;
+                        continue;
+                    }
+                    runStart = i;
+                }
+            }
+            i++;
+        }
+        encode(runStart, length);
+        return this;
+    }
+
+    /**
+     * Converte uma tag, sem as chaves
+     *
+     * @param tag br, b, /b, center...
+     * @return false se a tag não for conhecida; nada é escrito nesse caso
+     */
+    public boolean appendTag(String tag) {
+        return appendTag(tag.toCharArray(), 0, tag.length());
+    }
+
+    private boolean appendTag(char[] chars, int start, int end) {
+        boolean set = chars[start] != '/';
+        if (!set) {
+            start++;
+        }
+        if (matches(chars, start, end, "br")) {
+            appendCommand(10);
+        } else if (matches(chars, start, end, "s")) {
+            appendMode(1, set);
+        } else if (matches(chars, start, end, "b")) {
+            appendMode(8, set);
+        } else if (matches(chars, start, end, "h")) {
+            appendMode(16, set);
+        } else if (matches(chars, start, end, "w")) {
+            appendMode(32, set);
+        } else if (matches(chars, start, end, "u")) {
+            appendMode(128, set);
+        } else if (matches(chars, start, end, "i")) {
+            mItalic = set;
+            appendCommand(27, 73, set ? 1 : 0);
+        } else if (matches(chars, start, end, "reset")) {
+            mMode = 0;
+            mItalic = false;
+            appendCommand(27, 33, 0, 27, 73, 0);
+        } else if (matches(chars, start, end, "left")) {
+            appendAlign(0);
+        } else if (matches(chars, start, end, "center")) {
+            appendAlign(1);
+        } else if (matches(chars, start, end, "right")) {
+            appendAlign(2);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compara sem diferenciar maiúsculas, como o SDK
+     */
+    private static boolean matches(char[] chars, int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = chars[start + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 32;
+            }
+            if (c != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Codifica o trecho [start, end) sem interpretar tags
+     *
+     * @param text
+     * @param start
+     * @param end
+     * @return this
+     */
+    public TextEncoder appendText(CharSequence text, int start, int end) {
+        if (start < end) {
+            encode(CharBuffer.wrap(text, start, end));
+        }
+        return this;
+    }
+
+    /**
+     * Codifica o trecho [start, end) do texto já copiado em mChars
+     */
+    private void encode(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        if (mAscii) {
+            if (mBuffer.remaining() < end - start) {
+                grow(end - start);
+            }
+            byte[] bytes = mBuffer.array();
+            int position = mBuffer.position();
+            char[] chars = mChars;
+            int i = start;
+            while (i < end && chars[i] < 0x80) {
+                bytes[position++] = (byte) chars[i++];
+            }
+            mBuffer.position(position);
+            if (i == end) {
+                return;
+            }
+            start = i;
+        }
+        mCharBuffer.limit(end).position(start);
+        encode(mCharBuffer);
+    }
+
+    private void encode(CharBuffer chars) {
+        mEncoder.reset();
+        while (true) {
+            CoderResult result = mEncoder.encode(chars, mBuffer, true);
+            if (result.isOverflow()) {
+                grow((int) (chars.remaining() * mEncoder.maxBytesPerChar()) + 1);
+                continue;
+            }
+            result = mEncoder.flush(mBuffer);
+            if (result.isOverflow()) {
+                grow(16);
+                continue;
+            }
+            return;
+        }
+    }
+
+    public TextEncoder appendCommand(int... bytes) {
+        if (mBuffer.remaining() < bytes.length) {
+            grow(bytes.length);
+        }
+        for (int b : bytes) {
+            mBuffer.put((byte) b);
+        }
+        return this;
+    }
+
+    /**
+     * Array com o conteúdo, válido de 0 até length(); é reaproveitado pela próxima conversão
+     *
+     * @return byte[]
+     */
+    public byte[] array() {
+        return mBuffer.array();
+    }
+
+    public int length() {
+        return mBuffer.position();
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[mBuffer.position()];
+        System.arraycopy(mBuffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private void appendMode(int bit, boolean set) {
+        mMode = set ? mMode | bit : mMode & ~bit;
+        appendCommand(27, 33, mMode);
+    }
+
+    private void appendAlign(int align) {
+        mAlign = align;
+        appendCommand(27, 97, align);
+    }
+
+    private void grow(int needed) {
+        int capacity = Math.max(mBuffer.capacity() * 2, mBuffer.position() + needed);
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        mBuffer.flip();
+        buffer.put(mBuffer);
+        mBuffer = buffer;
+    }
+}
@@ -0,0 +1,132 @@
+package com.giorgiofellipe.datecsprinter;
+
+import com.datecs.api.printer.Printer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingOutputStreamTest {
+    private static final int RECEIPTS = 10;
+
+    /**
+     * Escritas que chegam ao simulador para 10 recibos (reset, texto, avanço e flush)
+     *
+     * @param chunkSize 0 sem o agrupamento
+     */
+    private static long socketWrites(String receipt, int chunkSize) throws IOException {
+        PrinterSimulator simulator = new PrinterSimulator();
+        OutputStream out = simulator.connect("00:01:90:AA:BB:CC").getOutputStream();
+        if (chunkSize > 0) {
+            out = new CoalescingOutputStream(out, chunkSize, 0, null);
+        }
+        Printer printer = new Printer(out);
+        for (int i = 0; i < RECEIPTS; i++) {
+            printer.reset();
+            printer.printTaggedText(receipt);
+            printer.feedPaper(110);
+            printer.flush();
+        }
+        return simulator.getWrites();
+    }
+
+    private static String receipt(int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("{b}Item{/b} ").append(text.length()).append(" R$ 1,90{br}");
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void defaultChunkNeverAddsWrites() throws IOException {
+        for (int length : new int[] { 570, 3750, 12000 }) {
+            String receipt = receipt(length);
+            long direct = socketWrites(receipt, 0);
+            long coalesced = socketWrites(receipt, CoalescingOutputStream.DEFAULT_CHUNK_SIZE);
+            assertTrue(length + " chars: " + coalesced + " writes, " + direct + " without coalescing",
+                    coalesced <= direct);
+        }
+    }
+
+    @Test
+    public void defaultChunkCutsWritesForLongReceipts() throws IOException {
+        String receipt = receipt(3750);
+        long direct = socketWrites(receipt, 0);
+        long coalesced = socketWrites(receipt, CoalescingOutputStream.DEFAULT_CHUNK_SIZE);
+        assertTrue(coalesced + " writes, " + direct + " without coalescing", coalesced < direct);
+    }
+
+    @Test
+    public void chunkBelowThePrinterBufferSplitsItsWrites() throws IOException {
+        String receipt = receipt(570);
+        assertTrue(socketWrites(receipt, 960) > socketWrites(receipt, 0));
+    }
+
+    @Test
+    public void writesWholeChunksAndKeepsTheRest() throws IOException {
+        RecordingOutputStream socket = new RecordingOutputStream();
+        CoalescingOutputStream out = new CoalescingOutputStream(socket, 100, 0, null);
+        byte[] data = new byte[450];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        out.write(data, 0, 30);
+        out.write(data, 30, 250);
+        out.write(data, 280, 170);
+        assertEquals(Arrays.asList(100, 100, 100, 100), socket.mSizes);
+        out.flush();
+        assertEquals(Arrays.asList(100, 100, 100, 100, 50), socket.mSizes);
+        assertArrayEquals(data, socket.toByteArray());
+        assertEquals(5, out.getWrites());
+        assertEquals(90, out.getAverageChunk());
+    }
+
+    @Test
+    public void sendsBufferedBytesAfterTheDelay() throws Exception {
+        RecordingOutputStream socket = new RecordingOutputStream();
+        CoalescingOutputStream out = new CoalescingOutputStream(socket, 100, 20, null);
+        out.write(new byte[10], 0, 10);
+        assertEquals(0, socket.size());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (socket.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(10, socket.size());
+    }
+
+    @Test
+    public void sameBytesReachThePrinter() throws IOException {
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        CoalescingOutputStream coalesced = new CoalescingOutputStream(socket, 700, 0, null);
+        String receipt = receipt(3750);
+        for (OutputStream out : new OutputStream[] { direct, coalesced }) {
+            Printer printer = new Printer(new ByteArrayInputStream(new byte[0]), out);
+            printer.reset();
+            printer.printTaggedText(receipt);
+            printer.flush();
+        }
+        assertArrayEquals(direct.toByteArray(), socket.toByteArray());
+    }
+
+    private static class RecordingOutputStream extends ByteArrayOutputStream {
+        final List<Integer> mSizes = new ArrayList<Integer>();
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            mSizes.add(len);
+            super.write(b, off, len);
+        }
+    }
+}
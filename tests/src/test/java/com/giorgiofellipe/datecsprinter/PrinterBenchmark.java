@@ -0,0 +1,137 @@
+package com.giorgiofellipe.datecsprinter;
+
+import com.datecs.api.printer.Printer;
+import com.datecs.api.printer.ProtocolAdapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminhos de impressão do plugin sobre o PrinterSimulator: vazão, latência (p99 no modo
+ * SampleTime) e alocação (-prof gc)
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrinterBenchmark {
+    private static final int IMAGE_WIDTH = 384;
+    private static final int IMAGE_HEIGHT = 200;
+
+    @Param({ "raw", "protocol" })
+    public String mode;
+
+    private PrinterSimulator mSimulator;
+    private ProtocolAdapter mAdapter;
+    private Printer mPrinter;
+    private String mReceipt;
+    private int[] mImage;
+
+    @Setup
+    public void connect() throws IOException {
+        mSimulator = new PrinterSimulator().setProtocol("protocol".equals(mode));
+        mAdapter = newAdapter(mSimulator);
+        if (mAdapter.isProtocolEnabled()) {
+            ProtocolAdapter.Channel channel = mAdapter.getChannel(ProtocolAdapter.CHANNEL_PRINTER);
+            mPrinter = new Printer(channel.getInputStream(), channel.getOutputStream());
+        } else {
+            mPrinter = new Printer(mAdapter.getRawInputStream(), mAdapter.getRawOutputStream());
+        }
+        mReceipt = receipt(40);
+        mImage = image(IMAGE_WIDTH, IMAGE_HEIGHT);
+    }
+
+    @TearDown
+    public void release() {
+        mAdapter.release();
+    }
+
+    @Benchmark
+    public void printTaggedText() throws IOException {
+        mPrinter.reset();
+        mPrinter.printTaggedText(mReceipt);
+        mPrinter.feedPaper(110);
+        mPrinter.flush();
+    }
+
+    @Benchmark
+    public void printImage() throws IOException {
+        mPrinter.printImage(mImage, IMAGE_WIDTH, IMAGE_HEIGHT, Printer.ALIGN_CENTER, true);
+        mPrinter.flush();
+    }
+
+    @Benchmark
+    public void printDitheredImage() throws IOException {
+        new ImageDitherer(ImageDitherer.Algorithm.FLOYD_STEINBERG)
+                .dither(mImage, IMAGE_WIDTH, IMAGE_HEIGHT)
+                .print(mPrinter, Printer.ALIGN_CENTER);
+        mPrinter.flush();
+    }
+
+    @Benchmark
+    public void printBarcode() throws IOException {
+        mPrinter.setBarcode(Printer.ALIGN_CENTER, false, 2, Printer.HRI_BELOW, 100);
+        mPrinter.printBarcode(Printer.BARCODE_CODE128AUTO, "7891234567895");
+        mPrinter.flush();
+    }
+
+    @Benchmark
+    public int getStatus() throws IOException {
+        return mPrinter.getStatus();
+    }
+
+    /**
+     * Conexão e detecção do modo; só no modo protocolo, já que o raw espera 500 ms pela resposta
+     */
+    @Benchmark
+    public boolean connectAndInitialize() throws IOException {
+        if (!"protocol".equals(mode)) {
+            return false;
+        }
+        ProtocolAdapter adapter = newAdapter(mSimulator);
+        try {
+            return adapter.isProtocolEnabled();
+        } finally {
+            adapter.release();
+        }
+    }
+
+    private static ProtocolAdapter newAdapter(PrinterSimulator simulator) throws IOException {
+        PrinterSocketFactory.PrinterSocket socket = simulator.connect("00:01:90:AA:BB:CC");
+        return new ProtocolAdapter(socket.getInputStream(), socket.getOutputStream());
+    }
+
+    static String receipt(int items) {
+        StringBuilder text = new StringBuilder("{reset}{center}{b}LOJA EXEMPLO{/b}{br}{left}");
+        for (int i = 0; i < items; i++) {
+            text.append("Item ").append(i).append(" {b}R$ ").append(i).append(",90{/b}{br}");
+        }
+        return text.append("{right}{h}{w}TOTAL R$ 123,45{/w}{/h}{br}").toString();
+    }
+
+    static int[] image(int width, int height) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gray = (x * 255 / width + y) & 0xFF;
+                argb[y * width + x] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+            }
+        }
+        return argb;
+    }
+}
@@ -0,0 +1,166 @@
+package com.giorgiofellipe.datecsprinter;
+
+import com.datecs.api.printer.Printer;
+import com.datecs.api.printer.ProtocolAdapter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrinterSimulatorTest {
+    private static final String ADDRESS = "00:01:90:AA:BB:CC";
+
+    private final List<ProtocolAdapter> mAdapters = new ArrayList<ProtocolAdapter>();
+
+    @After
+    public void releaseAdapters() {
+        for (ProtocolAdapter adapter : mAdapters) {
+            adapter.release();
+        }
+    }
+
+    private ProtocolAdapter open(PrinterSocketFactory.PrinterSocket socket) throws Exception {
+        ProtocolAdapter adapter = new ProtocolAdapter(socket.getInputStream(), socket.getOutputStream());
+        mAdapters.add(adapter);
+        return adapter;
+    }
+
+    @Test
+    public void rawModeAnswersStatusAndTemperature() throws Exception {
+        PrinterSimulator simulator = new PrinterSimulator().setTemperature(45).setPaperOut(true);
+        ProtocolAdapter adapter = open(simulator.connect(ADDRESS));
+        assertFalse(adapter.isProtocolEnabled());
+
+        Printer printer = new Printer(adapter.getRawInputStream(), adapter.getRawOutputStream());
+        printer.reset();
+        printer.printTaggedText("{b}one{/b}{br}two{br}");
+        printer.flush();
+        assertEquals(PrinterSimulator.DEFAULT_PAPER_OUT_STATUS, printer.getStatus());
+        assertEquals(45, printer.getTemperature());
+        assertEquals(2, simulator.getLines());
+        assertEquals(2, simulator.getQueries());
+    }
+
+    @Test
+    public void protocolModeAnswersThroughTheChannel() throws Exception {
+        PrinterSimulator simulator = new PrinterSimulator().setProtocol(true).setTemperature(38);
+        ProtocolAdapter adapter = open(simulator.connect(ADDRESS));
+        assertTrue(adapter.isProtocolEnabled());
+
+        ProtocolAdapter.Channel channel = adapter.getChannel(ProtocolAdapter.CHANNEL_PRINTER);
+        Printer printer = new Printer(channel.getInputStream(), channel.getOutputStream());
+        printer.reset();
+        printer.printTaggedText("{center}one{br}two{br}three{br}");
+        printer.flush();
+        assertEquals(0, printer.getStatus());
+        assertEquals(38, printer.getTemperature());
+        assertEquals(3, simulator.getLines());
+    }
+
+    @Test
+    public void protocolModeSendsPaperEvents() throws Exception {
+        PrinterSimulator simulator = new PrinterSimulator().setProtocol(true);
+        ProtocolAdapter adapter = open(simulator.connect(ADDRESS));
+        assertTrue(adapter.isProtocolEnabled());
+        ProtocolAdapter.Channel channel = adapter.getChannel(ProtocolAdapter.CHANNEL_PRINTER);
+        final CountDownLatch paperOut = new CountDownLatch(1);
+        channel.setListener(new ChannelListenerAdapter() {
+            @Override
+            public void onPaperReady(boolean state) {
+                if (!state) {
+                    paperOut.countDown();
+                }
+            }
+        });
+
+        simulator.setPaperOut(true);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (paperOut.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            channel.pullEvent();
+            Thread.sleep(10);
+        }
+        assertTrue(paperOut.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void keepsOneConnectionPerAddress() throws Exception {
+        PrinterSimulator simulator = new PrinterSimulator();
+        PrinterSocketFactory.PrinterSocket first = simulator.connect("A");
+        PrinterSocketFactory.PrinterSocket second = simulator.connect("B");
+        assertTrue(first.isConnected());
+
+        simulator.disconnect("A");
+        assertFalse(first.isConnected());
+        assertTrue(second.isConnected());
+
+        PrinterSocketFactory.PrinterSocket again = simulator.connect("B");
+        assertFalse(second.isConnected());
+        assertTrue(again.isConnected());
+        assertEquals(3, simulator.getConnects());
+    }
+
+    @Test
+    public void dropsTheConnectionAfterTheConfiguredBytes() throws Exception {
+        PrinterSimulator simulator = new PrinterSimulator().setDisconnectAfter(100);
+        PrinterSocketFactory.PrinterSocket socket = simulator.connect(ADDRESS);
+        socket.getOutputStream().write(new byte[60]);
+        try {
+            socket.getOutputStream().write(new byte[60]);
+            fail("write after the limit");
+        } catch (java.io.IOException e) {
+            assertFalse(socket.isConnected());
+        }
+        assertEquals(-1, socket.getInputStream().read());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void failsToConnectWhenUnreachable() throws Exception {
+        new PrinterSimulator().setFailConnect(true).connect(ADDRESS);
+    }
+
+    @Test
+    public void pacesWritesAtTheBaudRate() throws Exception {
+        // 9600 baud: 960 bytes por segundo
+        PrinterSimulator simulator = new PrinterSimulator().setBaudRate(9600);
+        PrinterSocketFactory.PrinterSocket socket = simulator.connect(ADDRESS);
+        long start = System.nanoTime();
+        socket.getOutputStream().write(new byte[480]);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("elapsed " + elapsed, elapsed >= 450);
+    }
+
+    private static class ChannelListenerAdapter implements ProtocolAdapter.ChannelListener {
+        @Override
+        public void onLowBattery(boolean state) {
+        }
+
+        @Override
+        public void onOverHeated(boolean state) {
+        }
+
+        @Override
+        public void onPaperReady(boolean state) {
+        }
+
+        @Override
+        public void onReadBarcode() {
+        }
+
+        @Override
+        public void onReadCard() {
+        }
+
+        @Override
+        public void onReadEncryptedCard() {
+        }
+    }
+}
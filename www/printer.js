@@ -16,35 +16,135 @@ var printer = {
   listBluetoothDevices: function(onSuccess, onError) {
     exec(onSuccess, onError, 'DatecsPrinter', 'listBluetoothDevices', []);
   },
-  connect: function(address, onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'connect', [address]);
+  connect: function(address, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'connect', [address, options || null]);
   },
-  disconnect: function(onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'disconnect', []);
+  disconnect: function(onSuccess, onError, address) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'disconnect', [address || null]);
   },
-  feedPaper: function(lines, onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'feedPaper', [lines]);
+  feedPaper: function(lines, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'feedPaper', [lines, options || null]);
   },
-  printText: function(text, onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'printText', [text]);
+  printText: function(text, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printText', [text, options || null]);
   },
-  printSelfTest: function (onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'printSelfTest', []);
+  printSelfTest: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printSelfTest', [options || null]);
   },
-  getStatus: function (onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'getStatus', []);
+  getStatus: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getStatus', [options || null]);
   },
-  getTemperature: function (onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'getTemperature', []);
+  getTemperature: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getTemperature', [options || null]);
   },
-  setBarcode: function (align, small, scale, hri, height, onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'setBarcode', [align, small, scale, hri, height]);
+  setBarcode: function (align, small, scale, hri, height, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'setBarcode', [align, small, scale, hri, height, options || null]);
   },
-  printBarcode: function (type, data, onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'printBarcode', [type, data]);
+  printBarcode: function (type, data, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printBarcode', [type, data, options || null]);
   },
-  printImage: function (image, width, height, align, onSuccess, onError) {
-    exec(onSuccess, onError, 'DatecsPrinter', 'printImage', [image, width, height, align]);
+  printImage: function (image, width, height, align, onSuccess, onError, dithering, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printImage', [image, width, height, align, dithering || null, options || null]);
+  },
+  printImageBinary: function (data, width, height, align, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printImageBinary', [data, width, height, align, options || null]);
+  },
+  cacheImage: function (id, image, width, height, align, onSuccess, onError, dithering, compression) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'cacheImage', [id, image, width, height, align, dithering || null, compression || null]);
+  },
+  printLogo: function (id, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printLogo', [id, options || null]);
+  },
+  setImageCacheLimit: function (maxBytes, onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'setImageCacheLimit', [maxBytes]);
+  },
+  getImageCacheStats: function (onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getImageCacheStats', []);
+  },
+  beginDocument: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'beginDocument', [options || null]);
+  },
+  appendChunk: function (text, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'appendChunk', [text, options || null]);
+  },
+  endDocument: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'endDocument', [options || null]);
+  },
+  subscribeEvents: function (onEvent, onError) {
+    exec(onEvent, onError, 'DatecsPrinter', 'subscribeEvents', []);
+  },
+  unsubscribeEvents: function (onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'unsubscribeEvents', []);
+  },
+  setAutoReconnect: function (enabled, options, onSuccess, onError) {
+    options = options || {};
+    exec(onSuccess, onError, 'DatecsPrinter', 'setAutoReconnect', [enabled, options.maxAttempts, options.baseDelay, options.maxDelay, options]);
+  },
+  getReconnectStats: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getReconnectStats', [options || null]);
+  },
+  configurePool: function (maxSize, idleTimeout, onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'configurePool', [maxSize, idleTimeout]);
+  },
+  listConnectedPrinters: function (onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'listConnectedPrinters', []);
+  },
+  setParallelConnect: function (enabled, onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'setParallelConnect', [enabled]);
+  },
+  getConnectStats: function (onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getConnectStats', []);
+  },
+  registerTemplate: function (id, template, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'registerTemplate', [id, template, options || null]);
+  },
+  printTemplate: function (id, data, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printTemplate', [id, data || {}, options || null]);
+  },
+  printBytes: function (data, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printBytes', [data, options || null]);
+  },
+  printQRCode: function (data, size, errorCorrection, align, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printQRCode', [data, size, errorCorrection, align, options || null]);
+  },
+  setNativeQRCode: function (enabled, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'setNativeQRCode', [enabled, options || null]);
+  },
+  getSpoolStats: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getSpoolStats', [options || null]);
+  },
+  clearSpool: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'clearSpool', [options || null]);
+  },
+  getHealth: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getHealth', [options || null]);
+  },
+  configureHealth: function (ttl, refreshInterval, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'configureHealth', [ttl, refreshInterval, options || null]);
+  },
+  getMetrics: function (onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'getMetrics', [options || null]);
+  },
+  setSimulator: function (options, onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'setSimulator', [options || null]);
+  },
+  configureOutput: function (chunkSize, maxDelay, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'configureOutput', [chunkSize, maxDelay, options || null]);
+  },
+  setImageCompression: function (mode, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'setImageCompression', [mode, options || null]);
+  },
+  discoverDevices: function (onDevice, onError, options) {
+    exec(onDevice, onError, 'DatecsPrinter', 'discoverDevices', [options || null]);
+  },
+  stopDiscovery: function (onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'stopDiscovery', []);
+  },
+  cancelJob: function (jobId, onSuccess, onError) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'cancelJob', [jobId]);
+  },
+  printBatch: function (operations, onSuccess, onError, options) {
+    exec(onSuccess, onError, 'DatecsPrinter', 'printBatch', [operations, options || null]);
   }
 };
 module.exports = printer;
\ No newline at end of file